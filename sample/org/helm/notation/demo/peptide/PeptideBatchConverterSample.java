@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.demo.peptide;
+
+import org.helm.notation.peptide.PeptideBatchConverter;
+import org.helm.notation.peptide.PeptideBatchReport;
+import java.io.FileReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+
+/**
+ * Converts a SMILES or SD file given as argument (format taken from file extension), or a small built-in SMILES list,
+ * and prints ordered results followed by the batch report
+ */
+public class PeptideBatchConverterSample {
+
+    public static void main(String[] args) {
+
+        try {
+            Reader input = null;
+            String format = PeptideBatchConverter.SMILES_FORMAT;
+            if (args.length > 0) {
+                input = new FileReader(args[0]);
+                if (args[0].toLowerCase().endsWith(".sdf") || args[0].toLowerCase().endsWith(".sd")) {
+                    format = PeptideBatchConverter.SDF_FORMAT;
+                }
+            } else {
+                StringBuilder sb = new StringBuilder();
+                sb.append("[H]N[C@@H](C)C(=O)NCC(=O)NCC(=O)N[C@@H](C)C(O)=O linear\n");
+                sb.append("[H]SC[C@H](NC(=O)CNC(=O)[C@H](C)NC(C)=O)C(=O)N[C@@H](C)C(O)=O terminal_ac\n");
+                sb.append("C[C@@H]1NC(=O)[C@H](CC(O)=O)NC(=O)[C@H](CCC(O)=O)NC(=O)[C@H](C)NC1=O backbone_cycle\n");
+                sb.append("[H]N[C@@H](C)C(=O)N[C@H]1CSSC[C@H](NC(=O)[C@H](CCC(O)=O)NC(=O)[C@H](CC(O)=O)NC1=O)C(=O)NCC(O)=O disulfide_cycle\n");
+                sb.append("CCCCCCCCCC not_a_peptide\n");
+                input = new StringReader(sb.toString());
+            }
+
+            Writer output = new OutputStreamWriter(System.out);
+            PeptideBatchReport report = PeptideBatchConverter.convert(input, format, output);
+            input.close();
+            System.out.println(report);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.demo.peptide;
+
+import org.helm.notation.peptide.PeptideStructureParser;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts a peptide corpus serially, then repeatedly on many threads, and checks parallel results match serial results
+ */
+public class PeptideStructureParserConcurrencySample {
+
+    private static final int THREAD_COUNT = 8;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+
+        try {
+            List<String> corpus = new ArrayList<String>();
+            corpus.add("[H]N[C@@H](C)C(=O)NCC(=O)NCC(=O)N[C@@H](C)C(O)=O");
+            corpus.add("[H]SC[C@H](NC(=O)CNC(=O)[C@H](C)NC(C)=O)C(=O)N[C@@H](C)C(O)=O");
+            corpus.add("C[C@@H]1NC(=O)[C@H](CC(O)=O)NC(=O)[C@H](CCC(O)=O)NC(=O)[C@H](C)NC1=O");
+            corpus.add("C[C@@H]1NC(=O)C[C@H](NC(=O)[C@H](CCC(O)=O)NC(=O)[C@H](C)NC1=O)C(O)=O");
+            corpus.add("C[C@H](NC(=O)[C@@H]1CC(=O)N[C@@H](C)C(=O)N[C@@H](CCC(O)=O)C(=O)N1)C(O)=O");
+            corpus.add("[H]N[C@@H](C)C(=O)N[C@H]1CCCCNC(=O)C[C@H](NC(=O)CNC(=O)[C@H](CC(C)C)NC1=O)C(=O)N[C@@H](C)C(O)=O");
+            corpus.add("[H]N[C@@H](C)C(=O)N[C@@H](CS[H])C(=O)N[C@@H](CC(=O)N[C@@H](CCSC)C(=O)N[C@@H](CC(N)=O)C(=O)N1CCC[C@H]1C(=O)N[C@@H](CCC(N)=O)C(O)=O)C(=O)N[C@@H](CCC(O)=O)C(=O)N[C@@H](CC1=CC=CC=C1)C(=O)NCC(O)=O");
+            corpus.add("[H]N[C@@H](C)C(=O)N[C@H]1CSSC[C@H](NC(=O)[C@H](CCC(O)=O)NC(=O)[C@H](CC(O)=O)NC1=O)C(=O)NCC(O)=O");
+            corpus.add("[H]N[C@@H](C)C(=O)N[C@@H](CSSC[C@H](NC(=O)[C@@H](N[H])CCC(O)=O)C(=O)NCC(O)=O)C(=O)N[C@@H](CC(O)=O)C(O)=O");
+
+            final PeptideStructureParser parser = PeptideStructureParser.getInstance();
+
+            long start = System.currentTimeMillis();
+            final List<String> expected = new ArrayList<String>();
+            for (String smiles : corpus) {
+                expected.add(convert(parser, smiles));
+            }
+            System.out.println("Serial conversion:\t" + (System.currentTimeMillis() - start) + " ms");
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            start = System.currentTimeMillis();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < corpus.size(); i++) {
+                    final int index = i;
+                    final String smiles = corpus.get(i);
+                    futures.add(executor.submit(new Callable<Integer>() {
+
+                        public Integer call() {
+                            String result = convert(parser, smiles);
+                            if (result.equals(expected.get(index))) {
+                                return new Integer(0);
+                            }
+                            System.out.println("Mismatch for " + smiles + "\n\tserial:   " + expected.get(index) + "\n\tparallel: " + result);
+                            return new Integer(1);
+                        }
+                    }));
+                }
+            }
+
+            int mismatches = 0;
+            for (Future<Integer> future : futures) {
+                mismatches = mismatches + future.get().intValue();
+            }
+            executor.shutdown();
+            System.out.println("Parallel conversion:\t" + (System.currentTimeMillis() - start) + " ms for " + futures.size() + " structures on " + THREAD_COUNT + " threads");
+            System.out.println("Mismatches:\t" + mismatches);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        System.exit(0);
+    }
+
+    private static String convert(PeptideStructureParser parser, String smiles) {
+        try {
+            return parser.smiles2notation(smiles);
+        } catch (Exception e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+}
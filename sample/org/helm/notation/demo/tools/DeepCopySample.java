@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.demo.tools;
+
+import org.helm.notation.model.Attachment;
+import org.helm.notation.model.ComplexPolymer;
+import org.helm.notation.model.Monomer;
+import org.helm.notation.model.Nucleotide;
+import org.helm.notation.model.PolymerEdge;
+import org.helm.notation.model.PolymerNode;
+import org.helm.notation.model.RNAPolymerNode;
+import org.helm.notation.tools.DeepCopy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares DeepCopy with a serialization round trip, checks that both give the same copies and reports the time taken by each.
+ * Polymer nodes, edges and complex polymers are not serializable, their copies are compared with the originals.
+ */
+public class DeepCopySample {
+
+    private static final int ITERATIONS = 100000;
+
+    public static void main(String[] args) {
+        try {
+            Monomer monomer = new Monomer(Monomer.NUCLIEC_ACID_POLYMER_TYPE, Monomer.BACKBONE_MOMONER_TYPE, "R", "R");
+            monomer.setId(7);
+            monomer.setName("Ribose");
+            monomer.setCanSMILES("[H][C@@]1([*])O[C@H](CO[*])[C@@H](O[*])[C@H]1O");
+            monomer.setMolfile("\n  Marvin  06150820362D\n\n  0  0  0  0  0  0            999 V2000\nM  END\n");
+            for (int i = 1; i <= 3; i++) {
+                Attachment attachment = new Attachment("R" + i, "H");
+                attachment.setId(i);
+                attachment.setAlternateId("R" + i + "-H");
+                attachment.setCapGroupSMILES("[*][H] |$_R" + i + ";$|");
+                monomer.addAttachment(attachment);
+            }
+
+            Nucleotide nucleotide = createNucleotide();
+
+            ArrayList<String[]> list = new ArrayList<String[]>();
+            for (int i = 0; i < 10; i++) {
+                list.add(new String[]{"RNA" + i, "CHEM" + i, "PEPTIDE" + i});
+            }
+
+            Monomer m1 = DeepCopy.copy(monomer);
+            Monomer m2 = (Monomer) serializeCopy(monomer);
+            check("Monomer", describe(m1).equals(describe(m2)) && m1 != monomer && m1.getAttachmentList().get(0) != monomer.getAttachmentList().get(0));
+            Nucleotide n1 = DeepCopy.copy(nucleotide);
+            Nucleotide n2 = (Nucleotide) serializeCopy(nucleotide);
+            check("Nucleotide", describe(n1).equals(describe(n2)) && n1 != nucleotide);
+            List<String[]> l1 = DeepCopy.copy(list);
+            @SuppressWarnings("unchecked")
+            List<String[]> l2 = (List<String[]>) serializeCopy(list);
+            check("List", describe(l1).equals(describe(l2)) && l1.get(0) != list.get(0));
+
+            ComplexPolymer polymer = createComplexPolymer();
+            PolymerNode node = polymer.getPolymerNodeList().get(0);
+            PolymerNode node1 = DeepCopy.copy(node);
+            check("PolymerNode", describe(node1).equals(describe(node)) && node1 != node && node1.getClass() == node.getClass());
+            PolymerEdge edge = polymer.getPolymerEdgeList().get(0);
+            PolymerEdge edge1 = DeepCopy.copy(edge);
+            check("PolymerEdge", describe(edge1).equals(describe(edge)) && edge1 != edge);
+            ComplexPolymer polymer1 = DeepCopy.copy(polymer);
+            check("ComplexPolymer", describe(polymer1).equals(describe(polymer)) && polymer1.getPolymerNodeList().get(0) != node
+                    && polymer1.getPolymerEdgeList().get(0) != edge && polymer1.getPolymerNodeAnnotationMap() != polymer.getPolymerNodeAnnotationMap());
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                serializeCopy(monomer);
+                serializeCopy(nucleotide);
+                serializeCopy(list);
+            }
+            long serializationTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                DeepCopy.copy(monomer);
+                DeepCopy.copy(nucleotide);
+                DeepCopy.copy(list);
+            }
+            long copyTime = System.nanoTime() - start;
+
+            System.out.println("Serialization: " + serializationTime / 1000000 + " ms for " + ITERATIONS + " iterations");
+            System.out.println("DeepCopy: " + copyTime / 1000000 + " ms for " + ITERATIONS + " iterations");
+            System.out.println("Speedup: " + (serializationTime / Math.max(copyTime, 1)) + "x");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    //natural analog is still a copied field, although its setter is deprecated
+    @SuppressWarnings("deprecation")
+    private static Nucleotide createNucleotide() {
+        Nucleotide nucleotide = new Nucleotide("A", "R(A)P", Nucleotide.MIDDLE_POSITION_TYPE);
+        nucleotide.setNaturalAnalog("A");
+        return nucleotide;
+    }
+
+    private static ComplexPolymer createComplexPolymer() {
+        RNAPolymerNode rna = new RNAPolymerNode();
+        rna.setId("RNA1");
+        rna.setLabel("R(A)P.R(C)P.R(G)");
+        rna.setAnotation("5'ss");
+        rna.setSequence("ACG");
+        rna.setModifiedSequence("ACG");
+        RNAPolymerNode antisense = new RNAPolymerNode();
+        antisense.setId("RNA2");
+        antisense.setLabel("R(C)P.R(G)P.R(U)");
+        antisense.setSequence("CGU");
+        antisense.setModifiedSequence("CGU");
+        PolymerNode peptide = new PolymerNode();
+        peptide.setId("PEPTIDE1");
+        peptide.setLabel("A.G.C");
+
+        PolymerEdge edge = new PolymerEdge();
+        edge.setSourceNode("RNA1");
+        edge.setTargetNode("PEPTIDE1");
+        edge.setConnection("1:R1-3:R3");
+        edge.setEdgeNotation("RNA1,PEPTIDE1,1:R1-3:R3");
+        PolymerEdge pair = new PolymerEdge();
+        pair.setSourceNode("RNA1");
+        pair.setTargetNode("RNA2");
+        pair.setConnection("2:pair-5:pair");
+        pair.setEdgeNotation("RNA1,RNA2,2:pair-5:pair");
+
+        ComplexPolymer polymer = new ComplexPolymer();
+        List<PolymerNode> nodes = new ArrayList<PolymerNode>();
+        nodes.add(rna);
+        nodes.add(antisense);
+        nodes.add(peptide);
+        polymer.setPolymerNodeList(nodes);
+        List<PolymerEdge> edges = new ArrayList<PolymerEdge>();
+        edges.add(edge);
+        polymer.setPolymerEdgeList(edges);
+        List<PolymerEdge> pairs = new ArrayList<PolymerEdge>();
+        pairs.add(pair);
+        polymer.setBasePairList(pairs);
+        Map<String, String> annotations = new LinkedHashMap<String, String>();
+        annotations.put("RNA1", "5'ss");
+        polymer.setPolymerNodeAnnotationMap(annotations);
+        return polymer;
+    }
+
+    private static void check(String type, boolean same) {
+        System.out.println(type + " copies " + (same ? "are equivalent" : "DIFFER"));
+    }
+
+    private static String describe(Monomer m) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(m.getId()).append('|').append(m.getAlternateId()).append('|').append(m.getNaturalAnalog()).append('|').append(m.getName());
+        sb.append('|').append(m.getCanSMILES()).append('|').append(m.getMolfile()).append('|').append(m.getMonomerType());
+        sb.append('|').append(m.getPolymerType()).append('|').append(m.isNewMonomer());
+        for (Attachment a : m.getAttachmentList()) {
+            sb.append('|').append(a.getId()).append(',').append(a.getAlternateId()).append(',').append(a.getLabel());
+            sb.append(',').append(a.getCapGroupName()).append(',').append(a.getCapGroupSMILES());
+        }
+        return sb.toString();
+    }
+
+    private static String describe(Nucleotide n) throws Exception {
+        //getNaturalAnalog() looks the base up in the monomer database, the stored field is read directly
+        Field field = Nucleotide.class.getDeclaredField("naturalAnalog");
+        field.setAccessible(true);
+        return n.getPositionType() + "|" + n.getSymbol() + "|" + n.getNotation() + "|" + n.isModified() + "|" + field.get(n);
+    }
+
+    private static String describe(PolymerNode node) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(node.getClass().getName()).append('|').append(node.getId()).append('|').append(node.getLabel()).append('|').append(node.getAnotation());
+        if (node instanceof RNAPolymerNode) {
+            RNAPolymerNode rna = (RNAPolymerNode) node;
+            sb.append('|').append(rna.getSequence()).append('|').append(rna.getModifiedSequence());
+        }
+        return sb.toString();
+    }
+
+    private static String describe(PolymerEdge edge) {
+        return edge.getEdgeNotation() + "|" + edge.getSourceNode() + "|" + edge.getTargetNode() + "|" + edge.getConnection() + "|" + edge.getEdgeType()
+                + "|" + edge.getSourceAttachmentType() + "|" + edge.getTargetAttachmentType();
+    }
+
+    private static String describe(ComplexPolymer polymer) {
+        StringBuilder sb = new StringBuilder();
+        for (PolymerNode node : polymer.getPolymerNodeList()) {
+            sb.append(describe(node)).append(';');
+        }
+        for (PolymerEdge edge : polymer.getPolymerEdgeList()) {
+            sb.append(describe(edge)).append(';');
+        }
+        for (PolymerEdge edge : polymer.getBasePairList()) {
+            sb.append(describe(edge)).append(';');
+        }
+        sb.append(polymer.getPolymerNodeAnnotationMap());
+        return sb.toString();
+    }
+
+    private static String describe(List<String[]> l) {
+        StringBuilder sb = new StringBuilder();
+        for (String[] o : l) {
+            for (String s : o) {
+                sb.append(s).append(',');
+            }
+            sb.append('|');
+        }
+        return sb.toString();
+    }
+
+    private static Object serializeCopy(Object input) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(100);
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(input);
+        oos.close();
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        Object output = ois.readObject();
+        ois.close();
+        return output;
+    }
+}
@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation;
+
+import org.helm.notation.model.Monomer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps ad hoc CHEM monomers, which are given as SMILES in notations, apart from the monomer database.
+ * Monomers are keyed by unique SMILES and by the SMILES they were given as, lookups take no lock and IDs are allocated atomically.
+ * Entries not used recently are evicted once the registry grows beyond its maximum size or maximum age, so memory stays bounded under unlimited ad hoc input.
+ * Entries used within the minimum retention time are never evicted, so that an ID handed out to a parse in progress still resolves when the parse looks it up;
+ * under heavy churn the registry may exceed its maximum size by the entries of that window.
+ * Approved entries are never evicted and are added to the monomer database as new monomers, so they are saved with it.
+ * A reloaded library takes over the entries and the ID counter of the registry it replaces, so an ID is never issued for two structures.
+ */
+public class AdHocChemMonomerRegistry {
+
+    public static final String ID_PREFIX = "CM#";
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_MIN_RETENTION = 60000;
+    private final MonomerFactory factory;
+    //shared with the registries of replaced libraries
+    private volatile AtomicLong idSeed = new AtomicLong();
+    private final ConcurrentHashMap<String, Entry> idMap = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentHashMap<String, Entry> smilesMap = new ConcurrentHashMap<String, Entry>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+    private volatile long maxAge;
+    private volatile long minRetention = DEFAULT_MIN_RETENTION;
+    private volatile long lastSweep = System.nanoTime();
+
+    private static class Entry {
+
+        private final Monomer monomer;
+        //SMILES keys pointing to this entry
+        private final List<String> keys = new CopyOnWriteArrayList<String>();
+        private volatile long lastAccess = System.nanoTime();
+        private volatile boolean approved;
+        private volatile boolean evicted;
+
+        Entry(Monomer monomer) {
+            this.monomer = monomer;
+        }
+    }
+
+    //access time is copied, so that concurrent lookups do not change the sort order
+    private static class Candidate {
+
+        private final Entry entry;
+        private final long lastAccess;
+
+        Candidate(Entry entry) {
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+    }
+
+    AdHocChemMonomerRegistry(MonomerFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * This method takes over settings, ID counter and entries of the registry of a replaced library
+     * @param previous registry of the replaced library
+     */
+    void inherit(AdHocChemMonomerRegistry previous) {
+        idSeed = previous.idSeed;
+        maxSize = previous.maxSize;
+        maxAge = previous.maxAge;
+        minRetention = previous.minRetention;
+        copyEntries(previous);
+    }
+
+    /**
+     * This method copies entries not known here yet, such as those registered in a replaced library while it was being replaced
+     * @param previous registry of the replaced library
+     */
+    void copyEntries(AdHocChemMonomerRegistry previous) {
+        for (Entry entry : previous.idMap.values()) {
+            if (entry.evicted) {
+                continue;
+            }
+            Entry copy = new Entry(entry.monomer);
+            copy.keys.addAll(entry.keys);
+            copy.lastAccess = entry.lastAccess;
+            copy.approved = entry.approved;
+            if (null == idMap.putIfAbsent(entry.monomer.getAlternateId(), copy)) {
+                for (String key : copy.keys) {
+                    putIfAbsent(key, copy);
+                }
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param maxSize maximum number of entries kept, approved entries included
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = (maxSize < 1) ? 1 : maxSize;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * @param maxAge milliseconds an entry is kept after its last use, 0 to keep entries until the size limit is reached
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = (maxAge < 0) ? 0 : maxAge;
+    }
+
+    public long getMinRetention() {
+        return minRetention;
+    }
+
+    /**
+     * @param minRetention milliseconds an entry is kept after its last use whatever the size, should exceed the longest parse
+     */
+    public void setMinRetention(long minRetention) {
+        this.minRetention = (minRetention < 0) ? 0 : minRetention;
+    }
+
+    public int size() {
+        return idMap.size();
+    }
+
+    /**
+     * @param id ad hoc monomer ID, such as CM#1
+     * @return monomer, null if unknown or evicted
+     */
+    public Monomer getMonomer(String id) {
+        return touch(idMap.get(id));
+    }
+
+    /**
+     * @param smiles SMILES as given in notation, or unique SMILES
+     * @return monomer, null if unknown or evicted
+     */
+    public Monomer getMonomerBySmiles(String smiles) {
+        return touch(smilesMap.get(smiles));
+    }
+
+    /**
+     * This method registers an ad hoc monomer under a new ID, unless a monomer with the same unique SMILES is registered already
+     * @param monomer new monomer, its ID is assigned here
+     * @param uniqueSmiles unique SMILES of the monomer, used to find existing entries for other forms of the same structure
+     * @return registered monomer, the existing one if the structure was registered before
+     */
+    public Monomer register(Monomer monomer, String uniqueSmiles) {
+        Entry entry = new Entry(monomer);
+        entry.keys.add(uniqueSmiles);
+
+        String id = nextId();
+        monomer.setAlternateId(id);
+        //the ID is not known to any other thread until the SMILES key is published
+        idMap.put(id, entry);
+        Entry existing = putIfAbsent(uniqueSmiles, entry);
+        if (null != existing) {
+            idMap.remove(id);
+            entry = existing;
+        }
+
+        if (null != monomer.getCanSMILES() && !monomer.getCanSMILES().equals(uniqueSmiles)) {
+            entry.keys.add(monomer.getCanSMILES());
+            putIfAbsent(monomer.getCanSMILES(), entry);
+        }
+
+        evictIfNeeded();
+        //returned even if a concurrent sweep evicted it, the caller still gets a complete monomer
+        entry.lastAccess = System.nanoTime();
+        return entry.monomer;
+    }
+
+    /**
+     * This method keeps an ad hoc monomer for good and adds it to the monomer database as new monomer, to be saved with it
+     * @param id ad hoc monomer ID
+     * @throws org.helm.notation.MonomerException if the monomer is unknown or evicted
+     * @throws java.io.IOException
+     */
+    public void approve(String id) throws MonomerException, IOException {
+        Entry entry = idMap.get(id);
+        if (null == entry || entry.evicted) {
+            throw new MonomerException("Unknown ad hoc monomer ID " + id);
+        }
+        entry.approved = true;
+        factory.addNewMonomer(entry.monomer);
+    }
+
+    /**
+     * This method removes all entries that are not approved
+     */
+    public void clear() {
+        for (Entry entry : idMap.values()) {
+            if (!entry.approved) {
+                remove(entry);
+            }
+        }
+    }
+
+    private String nextId() {
+        Map<String, Monomer> chemMonomers = factory.getMonomerDB().get(Monomer.CHEMICAL_POLYMER_TYPE);
+        String id = ID_PREFIX + idSeed.incrementAndGet();
+        while ((null != chemMonomers && chemMonomers.containsKey(id)) || idMap.containsKey(id)) {
+            id = ID_PREFIX + idSeed.incrementAndGet();
+        }
+        return id;
+    }
+
+    private Entry putIfAbsent(String key, Entry entry) {
+        Entry existing = smilesMap.putIfAbsent(key, entry);
+        //an evicted entry may still be mapped by a late alias
+        while (null != existing && existing.evicted) {
+            if (smilesMap.replace(key, existing, entry)) {
+                return null;
+            }
+            existing = smilesMap.putIfAbsent(key, entry);
+        }
+        return existing;
+    }
+
+    private Monomer touch(Entry entry) {
+        if (null == entry || entry.evicted) {
+            return null;
+        }
+        entry.lastAccess = System.nanoTime();
+        return entry.monomer;
+    }
+
+    private void remove(Entry entry) {
+        entry.evicted = true;
+        idMap.remove(entry.monomer.getAlternateId());
+        for (String key : entry.keys) {
+            smilesMap.remove(key, entry);
+        }
+    }
+
+    //only one thread sweeps at a time, others carry on without waiting
+    private void evictIfNeeded() {
+        long now = System.nanoTime();
+        long maxAgeNanos = maxAge * 1000000L;
+        long minRetentionNanos = minRetention * 1000000L;
+        boolean expire = maxAgeNanos > 0 && now - lastSweep >= maxAgeNanos;
+        if (idMap.size() <= maxSize && !expire) {
+            return;
+        }
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            lastSweep = now;
+            List<Candidate> candidates = new ArrayList<Candidate>();
+            for (Entry entry : idMap.values()) {
+                //recently used entries may be referenced by a parse in progress
+                if (entry.approved || now - entry.lastAccess < minRetentionNanos) {
+                    continue;
+                }
+                if (maxAgeNanos > 0 && now - entry.lastAccess > maxAgeNanos) {
+                    remove(entry);
+                } else {
+                    candidates.add(new Candidate(entry));
+                }
+            }
+
+            //evict least recently used entries down to 90% of maximum size, so that sweeps are not run on every registration
+            int target = maxSize - maxSize / 10;
+            if (idMap.size() > maxSize) {
+                Collections.sort(candidates, new Comparator<Candidate>() {
+
+                    public int compare(Candidate c1, Candidate c2) {
+                        return (c1.lastAccess < c2.lastAccess) ? -1 : ((c1.lastAccess == c2.lastAccess) ? 0 : 1);
+                    }
+                });
+                for (int i = 0; i < candidates.size() && idMap.size() > target; i++) {
+                    Entry entry = candidates.get(i).entry;
+                    //used again since the snapshot
+                    if (System.nanoTime() - entry.lastAccess >= minRetentionNanos) {
+                        remove(entry);
+                    }
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+}
@@ -41,4 +41,8 @@ public class CalculationException extends Exception {
     public CalculationException(String msg) {
         super(msg);
     }
+
+    public CalculationException(String msg, Throwable err) {
+        super(msg, err);
+    }
 }
@@ -21,6 +21,7 @@
  ******************************************************************************/
 package org.helm.notation;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -29,6 +30,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -53,7 +56,8 @@ import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
 
 /**
- * This is a factory class to build monomer database from MonomerDBGZEnconded.xml document
+ * This is a factory class to build monomer database from MonomerDBGZEnconded.xml document.
+ * Each factory holds its own monomer database, getInstance returns the factory of the NotationContext bound to the current thread, or the default one.
  * @author zhangtianhong
  */
 public class MonomerFactory {
@@ -63,6 +67,9 @@ public class MonomerFactory {
     public static final String MONOMER_CACHE_FILE_PATH = NOTATION_DIRECTORY + System.getProperty("file.separator") + MONOMER_CACHE_FILE_NAME;
     public static final String MONOMER_DB_FILE_NAME = "MonomerDBGZEncoded.xml";
     public static final String MONOMER_DB_FILE_PATH = NOTATION_DIRECTORY + System.getProperty("file.separator") + MONOMER_DB_FILE_NAME;
+    public static final String MONOMER_JOURNAL_FILE_NAME = "MonomerJournal.log";
+    public static final String MONOMER_JOURNAL_FILE_PATH = NOTATION_DIRECTORY + System.getProperty("file.separator") + MONOMER_JOURNAL_FILE_NAME;
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
     public static final String MONOMER_DB_XML_RESOURCE = "resources/MonomerDBGZEncoded.xml";
     public static final String MONOMER_DB_SCHEMA_RESOURCE = "resources/MonomerDBSchema.xsd";
     public static final String XML_SCHEMA_VALIDATION_FEATURE = "http://apache.org/xml/features/validation/schema";
@@ -72,31 +79,63 @@ public class MonomerFactory {
     public static final String POLYMER_ELEMENT = "POLYMER";
     public static final String POLYMER_TYPE_ATTRIBUTE = "polymerType";
     public static final String ATTACHMENT_LIST_ELEMENT = "ATTACHMENT_LIST";
-    private static MonomerFactory instance;
+    private static volatile MonomerFactory instance;
     /**
      * First key is polymer Type, such as "RNA"
      * Second key is monomer ID, such as "A"
      */
-    private static Map<String, Map<String, Monomer>> monomerDB;    //key is monomer SMILES, value is Monomer
-    private static Map<String, Monomer> smilesMonomerDB;    //key is AttachementID, value is Attachment
-    private static Map<String, Attachment> attachmentDB;
+    private Map<String, Map<String, Monomer>> monomerDB;    //key is monomer SMILES, value is Monomer
+    private Map<String, Monomer> smilesMonomerDB;    //key is AttachementID, value is Attachment
+    private Map<String, Attachment> attachmentDB;
+    //read only view handed out by getMonomerDB, rebuilt when a polymer type may have been added
+    private Map<String, Map<String, Monomer>> monomerDBView;
+    private final AdHocChemMonomerRegistry adHocChemMonomerRegistry = new AdHocChemMonomerRegistry(this);
+    //monomers added or merged since the last save, journal is opened on first save
+    private final List<Monomer> unjournaledMonomers = new ArrayList<Monomer>();
+    private MonomerJournal journal;
+    private boolean snapshotRequired = false;
+    //default library that replaced this one in a reload, monomers added here later are saved with it
+    private MonomerFactory successor;
+    private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
     private static SAXBuilder builder;
     private static Logger logger = Logger.getLogger(MonomerFactory.class.toString());
 
     /**
-     * retruns the monomer database
-     * @return Map  as Map<String, Map<String, Monomer>>
+     * retruns the monomer database.
+     * The maps are read only, add monomers with addNewMonomer or merge so that saveMonomerCache records them in the journal,
+     * and do not modify returned monomers in place
+     * @return Map  as Map<String, Map<String, Monomer>>, unmodifiable
      */
     public synchronized Map<String, Map<String, Monomer>> getMonomerDB() {
-        return monomerDB;
+        if (null == monomerDBView) {
+            Map<String, Map<String, Monomer>> view = new HashMap<String, Map<String, Monomer>>();
+            for (Map.Entry<String, Map<String, Monomer>> entry : monomerDB.entrySet()) {
+                view.put(entry.getKey(), Collections.unmodifiableMap(entry.getValue()));
+            }
+            monomerDBView = Collections.unmodifiableMap(view);
+        }
+        return monomerDBView;
     }
 
+    /**
+     * @return attachment database, key is attachment ID, unmodifiable
+     */
     public synchronized Map<String, Attachment> getAttachmentDB() {
-        return attachmentDB;
+        return Collections.unmodifiableMap(attachmentDB);
     }
 
+    /**
+     * @return monomer database keyed by monomer SMILES, unmodifiable
+     */
     public synchronized Map<String, Monomer> getSmilesMonomerDB() {
-        return smilesMonomerDB;
+        return Collections.unmodifiableMap(smilesMonomerDB);
+    }
+
+    /**
+     * @return registry of ad hoc CHEM monomers found in notations, kept apart from the monomer database
+     */
+    public AdHocChemMonomerRegistry getAdHocChemMonomerRegistry() {
+        return adHocChemMonomerRegistry;
     }
 
     public synchronized List<String> getPolymerTypes() {
@@ -156,44 +195,98 @@ public class MonomerFactory {
         builder.setProperty(EXTERNAL_SCHEMA_LOCATION_KEY, DEFAULT_NAME_SPACE + " " + schema.toString());
     }
 
-    private MonomerFactory() {
+    private MonomerFactory(MonomerCache cache) {
+        monomerDB = cache.getMonomerDB();
+        attachmentDB = cache.getAttachmentDB();
+        smilesMonomerDB = cache.getSmilesMonomerDB();
+    }
+
+    /**
+     * @return factory loaded at startup, null if not loaded yet
+     */
+    static MonomerFactory getLoadedDefaultInstance() {
+        return instance;
     }
 
     /**
-     * Initialize MonomerCache and returns the singlton Factory class
+     * Initialize MonomerCache and returns the singlton Factory class.
+     * The cache is loaded exactly once, concurrent first callers wait for it.
+     * If a NotationContext is bound to the current thread, or the library was reloaded, that factory is returned instead.
      * @return MonomerFactory
      * @throws org.helm.notation.MonomerException
      * @throws java.io.IOException
      * @throws org.jdom.JDOMException
      */
     public static MonomerFactory getInstance() throws MonomerException, IOException, JDOMException {
+        NotationContext context = NotationContext.getEffectiveContext();
+        if (null != context) {
+            return context.getMonomerFactory();
+        }
+
         if (null == instance) {
-            initializeMonomerCache();
-            instance = new MonomerFactory();
+            synchronized (MonomerFactory.class) {
+                if (null == instance) {
+                    instance = new MonomerFactory(initializeMonomerCache());
+                }
+            }
         }
         return instance;
     }
 
+    /**
+     * This method creates a factory with its own copy of the monomer database, the input cache is not modified
+     * @param cache monomer cache
+     * @return MonomerFactory independent of the default factory
+     * @throws org.helm.notation.MonomerException
+     * @throws java.io.IOException
+     */
+    static MonomerFactory newInstance(MonomerCache cache) throws MonomerException, IOException {
+        validate(cache.getMonomerDB());
+
+        Map<String, Map<String, Monomer>> newMonomerDB = new HashMap<String, Map<String, Monomer>>();
+        for (Map.Entry<String, Map<String, Monomer>> entry : cache.getMonomerDB().entrySet()) {
+            newMonomerDB.put(entry.getKey(), new HashMap<String, Monomer>(entry.getValue()));
+        }
+        MonomerCache newCache = new MonomerCache();
+        newCache.setMonomerDB(newMonomerDB);
+        newCache.setAttachmentDB(new HashMap<String, Attachment>(cache.getAttachmentDB()));
+        newCache.setSmilesMonomerDB(new HashMap<String, Monomer>(cache.getSmilesMonomerDB()));
+        return new MonomerFactory(newCache);
+    }
+
     private static void serializeMonomerCache(MonomerCache monomerCache, String fileName) throws IOException {
-        FileOutputStream fos = new FileOutputStream(fileName);
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-        oos.writeObject(monomerCache);
-        oos.close();
-        fos.close();
+        File tmpFile = new File(fileName + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos));
+            oos.writeObject(monomerCache);
+            oos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        replaceFile(tmpFile, new File(fileName));
     }
 
-    private static MonomerCache deserializeMonomerCache(String fileName) throws IOException, MonomerException {
-        FileInputStream fis = new FileInputStream(fileName);
-        ObjectInputStream ois = new ObjectInputStream(fis);
-        MonomerCache cache = null;
+    static MonomerCache deserializeMonomerCache(String fileName) throws IOException, MonomerException {
+        ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName));
         try {
-            cache = (MonomerCache) ois.readObject();
+            return (MonomerCache) ois.readObject();
         } catch (ClassNotFoundException cnfe) {
             throw new MonomerException("Unable to deserialize monomer cache from file");
+        } finally {
+            ois.close();
+        }
+    }
+
+    //renameTo does not replace an existing file on all platforms
+    private static void replaceFile(File tmpFile, File file) throws IOException {
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Unable to rename " + tmpFile.getPath() + " to " + file.getPath());
+            }
         }
-        ois.close();
-        fis.close();
-        return cache;
     }
 
     /**
@@ -202,21 +295,30 @@ public class MonomerFactory {
      */
     public synchronized void addNewMonomer(Monomer monomer) throws IOException, MonomerException {
         monomer.setNewMonomer(true);
-        addMonomer(monomerDB, smilesMonomerDB, monomer);
+        if (addMonomer(monomerDB, smilesMonomerDB, monomer)) {
+            unjournaledMonomers.add(monomer);
+            monomerDBView = null;
+        }
     }
 
-    private void addMonomer(Map<String, Map<String, Monomer>> monomerDB, Map<String, Monomer> smilesMonomerDB, Monomer monomer)
+    /**
+     * @return true if the monomer ID was not in the database yet
+     */
+    static boolean addMonomer(Map<String, Map<String, Monomer>> monomerDB, Map<String, Monomer> smilesMonomerDB, Monomer monomer)
             throws IOException, MonomerException {
         Map<String, Monomer> monomerMap = monomerDB.get(monomer.getPolymerType());
+        boolean added = false;
 
         if (null == monomerMap) {
             Map<String, Monomer> map = new HashMap<String, Monomer>();
             Monomer copyMonomer = DeepCopy.copy(monomer);
             map.put(monomer.getAlternateId(), copyMonomer);
             monomerDB.put(monomer.getPolymerType(), map);
+            added = true;
         } else {
             if (!monomerMap.containsKey(monomer.getAlternateId())) {
                 monomerMap.put(monomer.getAlternateId(), monomer);
+                added = true;
             }
         }
 
@@ -225,6 +327,7 @@ public class MonomerFactory {
                 smilesMonomerDB.put(monomer.getCanSMILES(), monomer);
             }
         }
+        return added;
     }
 
     /**
@@ -262,7 +365,10 @@ public class MonomerFactory {
                 for (Iterator it = monomerSet.iterator(); it.hasNext();) {
                     String id = (String) it.next();
                     Monomer m = map.get(id);
-                    addMonomer(monomerDB, smilesMonomerDB, m);
+                    if (addMonomer(monomerDB, smilesMonomerDB, m)) {
+                        unjournaledMonomers.add(m);
+                        monomerDBView = null;
+                    }
                 }
             }
         }
@@ -278,6 +384,9 @@ public class MonomerFactory {
         monomerDB = remoteMonomerCache.getMonomerDB();
         attachmentDB = remoteMonomerCache.getAttachmentDB();
         smilesMonomerDB = remoteMonomerCache.getSmilesMonomerDB();
+        monomerDBView = null;
+        unjournaledMonomers.clear();
+        snapshotRequired = true;
     }
 
     /**
@@ -340,7 +449,8 @@ public class MonomerFactory {
         return l;
     }
 
-    private static MonomerCache buildMonomerCacheFromXML(InputStream monomerDBInputStream) throws MonomerException, IOException, JDOMException {
+    //the shared builder is not thread safe
+    static synchronized MonomerCache buildMonomerCacheFromXML(InputStream monomerDBInputStream) throws MonomerException, IOException, JDOMException {
         if (null == builder) {
             setupBuilder();
         }
@@ -362,11 +472,10 @@ public class MonomerFactory {
         return cache;
     }
     
-    private static String buildMonomerDbXMLFromCache(MonomerCache cache) throws MonomerException {
+    private static void writeMonomerDbXML(MonomerCache cache, Writer writer) throws MonomerException, IOException {
         XMLOutputter outputer = new XMLOutputter(Format.getCompactFormat());
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><MONOMER_DB xmlns=\"lmr\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">");
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?><MONOMER_DB xmlns=\"lmr\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">");
 
         Map<String, Map<String, Monomer>> mDB = cache.getMonomerDB();
         Element polymerListElement = new Element(POLYMER_LIST_ELEMENT);
@@ -388,8 +497,7 @@ public class MonomerFactory {
                 polymerElement.getChildren().add(monomerElement);
             }
         }
-        String polymerListString = outputer.outputString(polymerListElement);
-        sb.append(polymerListString);
+        outputer.output(polymerListElement, writer);
 
 
         Map<String, Attachment> aDB = cache.getAttachmentDB();
@@ -401,12 +509,9 @@ public class MonomerFactory {
             Element attachmentElement = MonomerParser.getAttachementElement(attachment);
             attachmentListElement.getChildren().add(attachmentElement);
         }
-        String attachmentListString = outputer.outputString(attachmentListElement);
-        sb.append(attachmentListString);
-
-        sb.append("</MONOMER_DB>");
+        outputer.output(attachmentListElement, writer);
 
-        return sb.toString();
+        writer.write("</MONOMER_DB>");
     }
 
     /**
@@ -415,7 +520,7 @@ public class MonomerFactory {
      * @throws java.io.IOException
      * @throws org.jdom.JDOMException
      */
-    private static void initializeMonomerCache() throws MonomerException, IOException, JDOMException {
+    private static MonomerCache initializeMonomerCache() throws MonomerException, IOException, JDOMException {
         MonomerCache cache = null;
         InputStream in = null;
 
@@ -453,29 +558,126 @@ public class MonomerFactory {
             logger.log(Level.INFO, MONOMER_DB_XML_RESOURCE + " is used for monomer cache initialization");
         }
 
-        monomerDB = cache.getMonomerDB();
-        attachmentDB = cache.getAttachmentDB();
-        smilesMonomerDB = cache.getSmilesMonomerDB();
+        int count = MonomerJournal.replay(new File(MONOMER_JOURNAL_FILE_PATH), cache);
+        if (count > 0) {
+            logger.log(Level.INFO, count + " monomers replayed from " + MONOMER_JOURNAL_FILE_PATH);
+        }
+
+        return cache;
+    }
+
+    /**
+     * @return true if monomers were added or the cache replaced since the last save
+     */
+    synchronized boolean hasUnsavedChanges() {
+        return snapshotRequired || !unjournaledMonomers.isEmpty();
     }
 
     /**
-     * save monomerCache to disk file
+     * This method is called when a reload replaced this default library, monomers added since the last save
+     * and later are passed on to the new library, so that saveMonomerCache still records them
+     * @param successor factory of the reloaded library
      * @throws java.io.IOException
+     * @throws org.helm.notation.MonomerException
      */
-    public void saveMonomerCache() throws IOException, MonomerException {
+    synchronized void handOver(MonomerFactory successor) throws IOException, MonomerException {
+        this.successor = successor;
+        forwardUnsavedMonomers();
+    }
+
+    private void forwardUnsavedMonomers() throws IOException, MonomerException {
+        for (Monomer monomer : unjournaledMonomers) {
+            successor.addNewMonomer(monomer);
+        }
+        unjournaledMonomers.clear();
+    }
+
+    //only the library published as default is written to the local notation directory
+    private boolean isDefault() {
+        NotationContext reloaded = NotationContext.getReloadedContext();
+        return (null == reloaded) ? this == instance : this == reloaded.getMonomerFactory();
+    }
+
+    /**
+     * save monomerCache to disk file.
+     * Monomers added or merged since the last save are appended to the journal, the snapshot files are rewritten only
+     * when the journal reaches the compaction threshold or the whole cache was replaced.
+     * A library replaced by a reload passes its monomers on to the new default library and saves that one
+     * @throws java.io.IOException
+     * @throws org.helm.notation.MonomerException
+     */
+    public synchronized void saveMonomerCache() throws IOException, MonomerException {
+        if (null != successor) {
+            forwardUnsavedMonomers();
+            successor.saveMonomerCache();
+            return;
+        }
+        if (!isDefault()) {
+            throw new MonomerException("Only the default monomer database is saved to " + NOTATION_DIRECTORY);
+        }
+        File f = new File(NOTATION_DIRECTORY);
+        if (!f.exists()) {
+            f.mkdir();
+        }
+        if (null == journal) {
+            journal = new MonomerJournal(new File(MONOMER_JOURNAL_FILE_PATH));
+        }
+
+        if (snapshotRequired || journal.getRecordCount() + unjournaledMonomers.size() >= compactionThreshold) {
+            compactMonomerCache();
+        } else {
+            journal.append(unjournaledMonomers);
+            unjournaledMonomers.clear();
+        }
+    }
+
+    /**
+     * This method writes the whole monomerCache to the snapshot files and clears the journal.
+     * Each file is written to a temporary file first and renamed, so a crash leaves either the old or the new snapshot
+     * @throws java.io.IOException
+     * @throws org.helm.notation.MonomerException
+     */
+    public synchronized void compactMonomerCache() throws IOException, MonomerException {
+        if (!isDefault()) {
+            throw new MonomerException("Only the default monomer database is saved to " + NOTATION_DIRECTORY);
+        }
         File f = new File(NOTATION_DIRECTORY);
         if (!f.exists()) {
             f.mkdir();
         }
         MonomerCache cache = new MonomerCache();
-        cache.setMonomerDB(getMonomerDB());
-        cache.setAttachmentDB(getAttachmentDB());
-        cache.setSmilesMonomerDB(getSmilesMonomerDB());
+        cache.setMonomerDB(monomerDB);
+        cache.setAttachmentDB(attachmentDB);
+        cache.setSmilesMonomerDB(smilesMonomerDB);
+
+        //XML first, the serialized cache must not be older than the XML it was written with
+        File tmpFile = new File(MONOMER_DB_FILE_PATH + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            Writer writer = new OutputStreamWriter(new BufferedOutputStream(fos), "UTF-8");
+            writeMonomerDbXML(cache, writer);
+            writer.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        replaceFile(tmpFile, new File(MONOMER_DB_FILE_PATH));
         serializeMonomerCache(cache, MONOMER_CACHE_FILE_PATH);
 
-        String monomerDbXML = buildMonomerDbXMLFromCache(cache);
-        FileOutputStream fos = new FileOutputStream(MONOMER_DB_FILE_PATH);
-        fos.write(monomerDbXML.getBytes());
+        //replaying the journal over the new snapshot is harmless, so it is removed last
+        if (null == journal) {
+            journal = new MonomerJournal(new File(MONOMER_JOURNAL_FILE_PATH));
+        }
+        journal.delete();
+        unjournaledMonomers.clear();
+        snapshotRequired = false;
+    }
+
+    /**
+     * @param compactionThreshold number of journal records that triggers compaction on save
+     */
+    public synchronized void setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
     }
 
     private static Map<String, Map<String, Monomer>> buildMonomerDB(Element polymerList) throws MonomerException, IOException, JDOMException {
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation;
+
+import org.helm.notation.model.Monomer;
+import org.helm.notation.model.MonomerCache;
+import org.helm.notation.tools.MonomerParser;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.jdom.Document;
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+
+/**
+ * This class is the append-only journal of monomers added to the default monomer database since the last snapshot.
+ * Each record is one line: CRC32 of the rest of the line, new monomer flag and MONOMER XML, separated by tab.
+ * Records are synced to disk before save returns, a record torn by a crash fails its check and is cut off at next replay.
+ * Records that no longer pass monomer validation are skipped with a warning, so that they can not block startup.
+ */
+class MonomerJournal {
+
+    private static final String CHARSET = "UTF-8";
+    private static final String SEPARATOR = "\t";
+    private static Logger logger = Logger.getLogger(MonomerJournal.class.toString());
+    private final File file;
+    private int recordCount;
+    //set when a failed append could not be cut off, the tail is repaired before the next append
+    private boolean damaged = false;
+
+    /**
+     * Open a journal, existing records are counted and a torn tail is cut off
+     * @param file journal file, created on first append
+     * @throws java.io.IOException
+     */
+    MonomerJournal(File file) throws IOException {
+        this.file = file;
+        recordCount = scan(file, null);
+    }
+
+    /**
+     * @return number of records since the last snapshot
+     */
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * This method appends monomers as one write and syncs the journal
+     * @param monomers monomers to append
+     * @throws java.io.IOException
+     * @throws org.helm.notation.MonomerException
+     */
+    void append(List<Monomer> monomers) throws IOException, MonomerException {
+        if (monomers.isEmpty()) {
+            return;
+        }
+        //raw format keeps text content as is
+        XMLOutputter outputer = new XMLOutputter(Format.getRawFormat());
+        StringBuilder sb = new StringBuilder();
+        for (Monomer monomer : monomers) {
+            //line breaks in text content are kept as character references, so that a record stays on one line
+            String xml = outputer.outputString(MonomerParser.getMonomerElement(monomer)).replace("\r", "&#13;").replace("\n", "&#10;");
+            String body = (monomer.isNewMonomer() ? "1" : "0") + SEPARATOR + xml;
+            sb.append(Long.toHexString(checksum(body)));
+            sb.append(SEPARATOR);
+            sb.append(body);
+            sb.append('\n');
+        }
+
+        if (damaged) {
+            recordCount = scan(file, null);
+            damaged = false;
+        }
+
+        long length = file.length();
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            try {
+                out.write(sb.toString().getBytes(CHARSET));
+                out.flush();
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch (IOException ioe) {
+            //a partly written record would hide all later records from replay
+            try {
+                truncate(file, length);
+            } catch (IOException te) {
+                damaged = true;
+                logger.log(Level.WARNING, "Unable to cut off partly written monomer journal records", te);
+            }
+            throw ioe;
+        }
+        recordCount += monomers.size();
+    }
+
+    /**
+     * This method removes the journal after its records are in a snapshot
+     * @throws java.io.IOException
+     */
+    void delete() throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete monomer journal " + file.getPath());
+        }
+        recordCount = 0;
+    }
+
+    /**
+     * This method adds the monomers recorded in a journal to a monomer cache, monomers already in the cache are kept
+     * @param file journal file
+     * @param cache monomer cache to update
+     * @return number of records replayed
+     * @throws java.io.IOException
+     */
+    static int replay(File file, MonomerCache cache) throws IOException {
+        return scan(file, cache);
+    }
+
+    private static int scan(File file, MonomerCache cache) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        byte[] bytes = readFile(file);
+
+        int count = 0;
+        int start = 0;
+        SAXBuilder builder = null;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            if (end == bytes.length) {
+                break;
+            }
+            String line = new String(bytes, start, end - start, CHARSET);
+            int index = line.indexOf(SEPARATOR);
+            if (index < 0 || !Long.toHexString(checksum(line.substring(index + 1))).equals(line.substring(0, index))) {
+                break;
+            }
+            start = end + 1;
+            count++;
+
+            if (null != cache) {
+                String body = line.substring(index + 1);
+                index = body.indexOf(SEPARATOR);
+                try {
+                    if (null == builder) {
+                        builder = new SAXBuilder();
+                    }
+                    Document doc = builder.build(new StringReader(body.substring(index + 1)));
+                    Monomer monomer = MonomerParser.getMonomer(doc.getRootElement());
+                    monomer.setNewMonomer("1".equals(body.substring(0, index)));
+                    MonomerParser.validateMonomer(monomer);
+                    MonomerFactory.addMonomer(cache.getMonomerDB(), cache.getSmilesMonomerDB(), monomer);
+                } catch (JDOMException je) {
+                    logger.log(Level.WARNING, "Skipped unreadable monomer journal record " + count, je);
+                } catch (MonomerException me) {
+                    logger.log(Level.WARNING, "Skipped invalid monomer journal record " + count, me);
+                } catch (IOException ioe) {
+                    logger.log(Level.WARNING, "Skipped invalid monomer journal record " + count, ioe);
+                }
+            }
+        }
+
+        if (start < bytes.length) {
+            truncate(file, start);
+            logger.log(Level.WARNING, "Cut off incomplete monomer journal tail after record " + count);
+        }
+        return count;
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+            raf.getFD().sync();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long checksum(String s) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(s.getBytes(CHARSET));
+        return crc.getValue();
+    }
+}
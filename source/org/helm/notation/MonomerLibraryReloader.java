@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation;
+
+import org.helm.notation.model.MonomerCache;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jdom.JDOMException;
+
+/**
+ * This class reloads the default monomer database and nucleotide templates while the service keeps running.
+ * The new library is parsed and validated off the request path, then monomers and templates are published together by one write.
+ * If the new library is invalid, the current one stays in use.
+ * Unsaved monomers of the current library are written to the journal first, and ad hoc CHEM monomers and their ID counter are carried over,
+ * so IDs handed out before the reload keep resolving to the same structures.
+ * Factories are looked up on every getInstance() call, so a request spanning a reload may see both libraries,
+ * unless it runs with NotationContext.withContext(NotationContext.snapshot(), task) as the batch tools do.
+ * Caches derived from the library compare getVersion() with the version they were built for, other caches can register a ReloadListener.
+ */
+public class MonomerLibraryReloader {
+
+    public static final long DEFAULT_POLL_INTERVAL = 5000;
+    private static Logger logger = Logger.getLogger(MonomerLibraryReloader.class.toString());
+    private static final AtomicLong version = new AtomicLong();
+    private static final List<ReloadListener> listeners = new CopyOnWriteArrayList<ReloadListener>();
+    private static final Object reloadLock = new Object();
+    private static Thread watcher;
+
+    /**
+     * This interface is notified after a reloaded library is published
+     */
+    public interface ReloadListener {
+
+        void libraryReloaded(long version);
+    }
+
+    private MonomerLibraryReloader() {
+    }
+
+    /**
+     * @return number of reloads published so far, 0 for the library loaded at startup
+     */
+    public static long getVersion() {
+        return version.get();
+    }
+
+    public static void addReloadListener(ReloadListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeReloadListener(ReloadListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * This method reads the monomer database (local snapshot and journal, else jar) and nucleotide templates (first from local, then from jar), validates them and publishes them as the default library.
+     * Concurrent reloads run one after the other, requests are not blocked.
+     * @return version of the published library
+     * @throws org.helm.notation.MonomerException
+     * @throws org.helm.notation.NotationException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    public static long reload() throws MonomerException, NotationException, IOException, JDOMException {
+        synchronized (reloadLock) {
+            NotationContext replaced = NotationContext.getReloadedContext();
+            MonomerFactory previous = (null == replaced) ? MonomerFactory.getLoadedDefaultInstance() : replaced.getMonomerFactory();
+            //unsaved monomers of the current library, the journal read below must include them
+            if (null != previous && previous.hasUnsavedChanges()) {
+                previous.saveMonomerCache();
+            }
+
+            File localMonomerDBFile = new File(MonomerFactory.MONOMER_DB_FILE_PATH);
+            File cacheFile = new File(MonomerFactory.MONOMER_CACHE_FILE_PATH);
+            MonomerCache cache = null;
+            InputStream in = null;
+            //serialized cache is written with each snapshot, an older one predates an edit of the XML
+            if (cacheFile.exists() && (!localMonomerDBFile.exists() || cacheFile.lastModified() >= localMonomerDBFile.lastModified())) {
+                cache = MonomerFactory.deserializeMonomerCache(MonomerFactory.MONOMER_CACHE_FILE_PATH);
+            } else {
+                try {
+                    if (localMonomerDBFile.exists()) {
+                        in = new FileInputStream(localMonomerDBFile);
+                    } else {
+                        in = MonomerFactory.class.getResourceAsStream(MonomerFactory.MONOMER_DB_XML_RESOURCE);
+                    }
+                    cache = MonomerFactory.buildMonomerCacheFromXML(in);
+                } finally {
+                    if (null != in) {
+                        in.close();
+                    }
+                }
+            }
+            MonomerJournal.replay(new File(MonomerFactory.MONOMER_JOURNAL_FILE_PATH), cache);
+
+            File localTemplateFile = new File(NucleotideFactory.LOCAL_NUCLEOTIDE_TEMPLATE_FILE_PATH);
+            Map<String, Map<String, String>> templates = null;
+            in = null;
+            try {
+                if (localTemplateFile.exists()) {
+                    in = new FileInputStream(localTemplateFile);
+                } else {
+                    in = NucleotideFactory.class.getResourceAsStream(NucleotideFactory.NUCLEOTIDE_TEMPLATE_XML_RESOURCE);
+                }
+                templates = NucleotideFactory.buildNucleotideTemplates(in);
+            } finally {
+                if (null != in) {
+                    in.close();
+                }
+            }
+
+            //validates monomers, and templates against the new monomers
+            NotationContext context = new NotationContext(cache, templates);
+            MonomerFactory factory = context.getMonomerFactory();
+            if (null != previous) {
+                factory.getAdHocChemMonomerRegistry().inherit(previous.getAdHocChemMonomerRegistry());
+            }
+            NotationContext.publishReloadedContext(context);
+            long current = version.incrementAndGet();
+            if (null != previous) {
+                //registered or added in the replaced library while this one was built
+                factory.getAdHocChemMonomerRegistry().copyEntries(previous.getAdHocChemMonomerRegistry());
+                try {
+                    previous.handOver(factory);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Unable to pass unsaved monomers on to the reloaded library", e);
+                }
+            }
+
+            //serialized cache would shadow the reloaded XML at next startup
+            if (localMonomerDBFile.exists() && cacheFile.exists() && cacheFile.lastModified() < localMonomerDBFile.lastModified()) {
+                cacheFile.delete();
+                logger.log(Level.INFO, "Deleted outdated local monomer cache file: " + MonomerFactory.MONOMER_CACHE_FILE_NAME);
+            }
+            logger.log(Level.INFO, "Monomer library reloaded, version " + current);
+
+            for (ReloadListener listener : listeners) {
+                try {
+                    listener.libraryReloaded(current);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Reload listener failed", e);
+                }
+            }
+            return current;
+        }
+    }
+
+    /**
+     * This method starts a daemon thread that reloads the library when the local monomer database or nucleotide templates file changes.
+     * A change is picked up once the file is unchanged for one poll interval, so that partially written files are not read.
+     * @param pollInterval milliseconds between file checks
+     */
+    public static synchronized void startWatcher(final long pollInterval) {
+        if (null != watcher) {
+            return;
+        }
+        watcher = new Thread(new Runnable() {
+
+            public void run() {
+                String applied = getFileStamp();
+                String previous = applied;
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        Thread.sleep(pollInterval);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    String stamp = getFileStamp();
+                    if (!stamp.equals(applied) && stamp.equals(previous)) {
+                        try {
+                            reload();
+                        } catch (Exception e) {
+                            logger.log(Level.WARNING, "Unable to reload monomer library, current library is kept", e);
+                        }
+                        applied = stamp;
+                    }
+                    previous = stamp;
+                }
+            }
+        }, "MonomerLibraryWatcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    public static void startWatcher() {
+        startWatcher(DEFAULT_POLL_INTERVAL);
+    }
+
+    public static synchronized void stopWatcher() {
+        if (null != watcher) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+    private static String getFileStamp() {
+        return getFileStamp(new File(MonomerFactory.MONOMER_DB_FILE_PATH)) + "|" + getFileStamp(new File(NucleotideFactory.LOCAL_NUCLEOTIDE_TEMPLATE_FILE_PATH));
+    }
+
+    private static String getFileStamp(File file) {
+        if (!file.exists()) {
+            return "";
+        }
+        return file.lastModified() + ":" + file.length();
+    }
+}
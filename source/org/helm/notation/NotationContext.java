@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation;
+
+import org.helm.notation.model.MonomerCache;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import org.jdom.JDOMException;
+
+/**
+ * This class carries a monomer database and nucleotide templates of its own, so that several monomer libraries can be served in one JVM.
+ * While a context is bound to a thread, MonomerFactory.getInstance() and NucleotideFactory.getInstance() return the factories of the context, so all parser APIs use its library.
+ * Pooled threads do not inherit it, batch tools pass the context of the submitting thread to each task with withContext().
+ */
+public class NotationContext {
+
+    private static final ThreadLocal<NotationContext> currentContext = new ThreadLocal<NotationContext>();
+    //default library published by MonomerLibraryReloader, replaces the initially loaded factories
+    private static volatile NotationContext reloadedContext;
+    //factories loaded at startup, as a context so that requests can keep them across a reload
+    private static volatile NotationContext initialContext;
+    private final MonomerFactory monomerFactory;
+    private final NucleotideFactory nucleotideFactory;
+
+    /**
+     * Create a context from a monomer cache and nucleotide templates, both are copied and validated
+     * @param monomerCache monomer database, attachments and SMILES index
+     * @param nucleotideTemplates nucleotide templates, first key is notation source
+     * @throws org.helm.notation.MonomerException
+     * @throws org.helm.notation.NotationException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    public NotationContext(MonomerCache monomerCache, Map<String, Map<String, String>> nucleotideTemplates) throws MonomerException, NotationException, IOException, JDOMException {
+        monomerFactory = MonomerFactory.newInstance(monomerCache);
+
+        //templates are validated against the monomers of this context
+        NotationContext previous = bind(this);
+        try {
+            nucleotideFactory = NucleotideFactory.newInstance(nucleotideTemplates);
+        } finally {
+            bind(previous);
+        }
+    }
+
+    private NotationContext(MonomerFactory monomerFactory, NucleotideFactory nucleotideFactory) {
+        this.monomerFactory = monomerFactory;
+        this.nucleotideFactory = nucleotideFactory;
+    }
+
+    /**
+     * This method creates a context from monomer database XML and nucleotide templates XML
+     * @param monomerDBXML monomer database XML, as MonomerDBGZEncoded.xml
+     * @param nucleotideTemplatesXML nucleotide templates XML, null to use the templates of the current thread
+     * @return NotationContext
+     * @throws org.helm.notation.MonomerException
+     * @throws org.helm.notation.NotationException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    public static NotationContext fromXML(InputStream monomerDBXML, InputStream nucleotideTemplatesXML) throws MonomerException, NotationException, IOException, JDOMException {
+        MonomerCache cache = MonomerFactory.buildMonomerCacheFromXML(monomerDBXML);
+        Map<String, Map<String, String>> templates = null;
+        if (null == nucleotideTemplatesXML) {
+            templates = NucleotideFactory.getInstance().getNucleotideTemplates();
+        } else {
+            templates = NucleotideFactory.buildNucleotideTemplates(nucleotideTemplatesXML);
+        }
+        return new NotationContext(cache, templates);
+    }
+
+    public MonomerFactory getMonomerFactory() {
+        return monomerFactory;
+    }
+
+    /**
+     * @return nucleotide factory, null while the context is being created
+     */
+    public NucleotideFactory getNucleotideFactory() {
+        return nucleotideFactory;
+    }
+
+    /**
+     * @return context bound to the current thread, null if the default library is used
+     */
+    public static NotationContext getCurrentContext() {
+        return currentContext.get();
+    }
+
+    /**
+     * This method returns the library the current thread uses now, for requests that must not see a reload part way.
+     * Run such a request with withContext(snapshot(), task), the batch tools do so for each job.
+     * @return context bound to the current thread, else the current default library, null if no library is loaded yet
+     */
+    public static NotationContext snapshot() {
+        NotationContext context = getEffectiveContext();
+        if (null != context) {
+            return context;
+        }
+        context = initialContext;
+        if (null == context) {
+            MonomerFactory monomerFactory = MonomerFactory.getLoadedDefaultInstance();
+            if (null == monomerFactory) {
+                return null;
+            }
+            //templates not loaded yet are looked up later, from the startup factory as well
+            context = new NotationContext(monomerFactory, NucleotideFactory.getLoadedDefaultInstance());
+            if (null != context.getNucleotideFactory()) {
+                initialContext = context;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * @return context bound to the current thread, else the last reloaded default library, null if neither
+     */
+    static NotationContext getEffectiveContext() {
+        NotationContext context = currentContext.get();
+        if (null == context) {
+            context = reloadedContext;
+        }
+        return context;
+    }
+
+    static NotationContext getReloadedContext() {
+        return reloadedContext;
+    }
+
+    /**
+     * This method publishes a reloaded default library, monomers and templates are replaced together by one write
+     * @param context reloaded library
+     */
+    static void publishReloadedContext(NotationContext context) {
+        reloadedContext = context;
+    }
+
+    /**
+     * This method binds a context to the current thread, callers should restore the returned context when done
+     * @param context context to bind, null to use the default library
+     * @return previously bound context, null if none
+     */
+    public static NotationContext bind(NotationContext context) {
+        NotationContext previous = currentContext.get();
+        if (null == context) {
+            currentContext.remove();
+        } else {
+            currentContext.set(context);
+        }
+        return previous;
+    }
+
+    /**
+     * This method wraps a task so that it runs with the given context bound, whichever thread runs it
+     * @param context context to bind, null to use the default library
+     * @param task task to wrap
+     * @return Callable
+     */
+    public static <T> Callable<T> withContext(final NotationContext context, final Callable<T> task) {
+        return new Callable<T>() {
+
+            public T call() throws Exception {
+                NotationContext previous = bind(context);
+                try {
+                    return task.call();
+                } finally {
+                    bind(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * This method wraps a task so that it runs with the given context bound, whichever thread runs it
+     * @param context context to bind, null to use the default library
+     * @param task task to wrap
+     * @return Runnable
+     */
+    public static Runnable withContext(final NotationContext context, final Runnable task) {
+        return new Runnable() {
+
+            public void run() {
+                NotationContext previous = bind(context);
+                try {
+                    task.run();
+                } finally {
+                    bind(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * This method runs a task with this context bound to the current thread
+     * @param task task to run
+     * @return task result
+     * @throws java.lang.Exception exception thrown by task
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        NotationContext previous = bind(this);
+        try {
+            return task.call();
+        } finally {
+            bind(previous);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation;
+
+import org.helm.notation.tools.ExtinctionCoefficientCalculator;
+import org.helm.notation.tools.NucleotideConverter;
+import java.io.IOException;
+import org.jdom.JDOMException;
+
+/**
+ * This class loads the shared monomer database, nucleotide templates and calculator tables at service start.
+ * Each table is loaded exactly once, so later requests do not pay for XML parsing and validation.
+ */
+public class NotationToolkit {
+
+    private NotationToolkit() {
+    }
+
+    /**
+     * This method initializes MonomerFactory, NucleotideFactory, NucleotideConverter and ExtinctionCoefficientCalculator, it is safe to call from several threads and more than once
+     * @throws org.helm.notation.MonomerException
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.CalculationException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    public static void warmUp() throws MonomerException, NotationException, CalculationException, IOException, JDOMException {
+        MonomerFactory.getInstance();
+        NucleotideFactory.getInstance();
+        NucleotideConverter.getInstance();
+        ExtinctionCoefficientCalculator.getInstance();
+    }
+}
@@ -22,6 +22,7 @@
 package org.helm.notation;
 
 import org.helm.notation.tools.NucleotideSequenceParser;
+import org.helm.notation.tools.NucleotideSymbolTrie;
 import org.helm.notation.tools.SimpleNotationParser;
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -42,7 +43,8 @@ import org.jdom.JDOMException;
 import org.jdom.input.SAXBuilder;
 
 /**
- * This is a factory class to build nucleotide templates
+ * This is a factory class to build nucleotide templates.
+ * Each factory holds its own templates, getInstance returns the factory of the NotationContext bound to the current thread, or the default one.
  * @author zhangtianhong
  */
 public class NucleotideFactory {
@@ -55,13 +57,15 @@ public class NucleotideFactory {
     public static final String XML_SCHEMA_VALIDATION_FEATURE = "http://apache.org/xml/features/validation/schema";
     public static final String EXTERNAL_SCHEMA_LOCATION_KEY = "http://apache.org/xml/properties/schema/external-schemaLocation";
     public static final String DEFAULT_NAME_SPACE = "lmr";
-    private static NucleotideFactory instance;
+    private static volatile NucleotideFactory instance;
     /**
      * First key is notation source, such as "HELM Notation"
      * Second key is nucleotide symbol, such as "A"
      */
-    private static Map<String, Map<String, String>> nucleotideTemplates;
-    private static Map<String, String> reverseNucleotideMap;
+    private Map<String, Map<String, String>> nucleotideTemplates;
+    private Map<String, String> reverseNucleotideMap;
+    //notation source to symbol trie, rebuilt whenever templates change
+    private Map<String, NucleotideSymbolTrie> nucleotideSymbolTries;
     private static SAXBuilder builder;
     private static Logger logger = Logger.getLogger(NucleotideFactory.class.toString());
 
@@ -71,7 +75,26 @@ public class NucleotideFactory {
 
     public synchronized void setNucleotideTemplates(Map<String, Map<String, String>> newNucleotideTemplates) {
         nucleotideTemplates = newNucleotideTemplates;
-        reverseNucleotideMap = getReverseNucleotideTemplateMap(NotationConstant.NOTATION_SOURCE);
+        reverseNucleotideMap = getReverseNucleotideTemplateMap(newNucleotideTemplates, NotationConstant.NOTATION_SOURCE);
+        nucleotideSymbolTries = buildNucleotideSymbolTries(newNucleotideTemplates);
+    }
+
+    /**
+     * This method returns the symbol trie used to split nucleotide sequences of the given notation source into nucleotides,
+     * it is built when nucleotide templates are loaded or changed
+     * @param notationSource notation source, such as "HELM Notation"
+     * @return nucleotide symbol trie for the notation source, null if notation source is unknown
+     */
+    public synchronized NucleotideSymbolTrie getNucleotideSymbolTrie(String notationSource) {
+        return nucleotideSymbolTries.get(notationSource);
+    }
+
+    private static Map<String, NucleotideSymbolTrie> buildNucleotideSymbolTries(Map<String, Map<String, String>> templates) {
+        Map<String, NucleotideSymbolTrie> map = new HashMap<String, NucleotideSymbolTrie>();
+        for (Map.Entry<String, Map<String, String>> entry : templates.entrySet()) {
+            map.put(entry.getKey(), new NucleotideSymbolTrie(entry.getValue()));
+        }
+        return map;
     }
 
     private static void setupBuilder() {
@@ -81,18 +104,65 @@ public class NucleotideFactory {
         builder.setProperty(EXTERNAL_SCHEMA_LOCATION_KEY, DEFAULT_NAME_SPACE + " " + schema.toString());
     }
 
-    private NucleotideFactory() {
+    private NucleotideFactory(Map<String, Map<String, String>> templates) {
+        nucleotideTemplates = templates;
+        reverseNucleotideMap = getReverseNucleotideTemplateMap(templates, NotationConstant.NOTATION_SOURCE);
+        nucleotideSymbolTries = buildNucleotideSymbolTries(templates);
+    }
+
+    /**
+     * @return factory loaded at startup, null if not loaded yet
+     */
+    static NucleotideFactory getLoadedDefaultInstance() {
+        return instance;
     }
 
+    /**
+     * Initialize nucleotide templates and returns the singlton Factory class.
+     * The templates are loaded exactly once, concurrent first callers wait for them.
+     * If a NotationContext is bound to the current thread, or the library was reloaded, that factory is returned instead.
+     * @return NucleotideFactory
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     * @throws org.helm.notation.NotationException
+     */
     public static NucleotideFactory getInstance() throws IOException, JDOMException, NotationException {
+        //a context being created has no templates yet
+        NotationContext context = NotationContext.getEffectiveContext();
+        if (null != context && null != context.getNucleotideFactory()) {
+            return context.getNucleotideFactory();
+        }
+
         if (null == instance) {
-            initializeNucleotideTemplates();
-            instance = new NucleotideFactory();
+            synchronized (NucleotideFactory.class) {
+                if (null == instance) {
+                    instance = new NucleotideFactory(initializeNucleotideTemplates());
+                }
+            }
         }
         return instance;
     }
 
-    private static Map<String, Map<String, String>> buildNucleotideTemplates(InputStream templatesInputStream) throws IOException, JDOMException {
+    /**
+     * This method creates a factory with its own copy of the nucleotide templates, templates are validated against the monomer database of the current thread
+     * @param templates nucleotide templates
+     * @return NucleotideFactory independent of the default factory
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     * @throws org.helm.notation.NotationException
+     */
+    static NucleotideFactory newInstance(Map<String, Map<String, String>> templates) throws IOException, JDOMException, NotationException {
+        validate(templates);
+
+        Map<String, Map<String, String>> newTemplates = new HashMap<String, Map<String, String>>();
+        for (Map.Entry<String, Map<String, String>> entry : templates.entrySet()) {
+            newTemplates.put(entry.getKey(), new HashMap<String, String>(entry.getValue()));
+        }
+        return new NucleotideFactory(newTemplates);
+    }
+
+    //the shared builder is not thread safe
+    static synchronized Map<String, Map<String, String>> buildNucleotideTemplates(InputStream templatesInputStream) throws IOException, JDOMException {
         if (null == builder) {
             setupBuilder();
         }
@@ -113,7 +183,7 @@ public class NucleotideFactory {
      * @throws java.io.IOException
      * @throws org.jdom.JDOMException
      */
-    private static void initializeNucleotideTemplates() throws IOException, JDOMException, NotationException {
+    private static Map<String, Map<String, String>> initializeNucleotideTemplates() throws IOException, JDOMException, NotationException {
 
         InputStream in = null;
         File localFile = new File(LOCAL_NUCLEOTIDE_TEMPLATE_FILE_PATH);
@@ -139,8 +209,7 @@ public class NucleotideFactory {
             logger.log(Level.INFO, NUCLEOTIDE_TEMPLATE_XML_RESOURCE + " is used for nucleotide templates initialization");
         }
 
-        nucleotideTemplates = templates;
-        reverseNucleotideMap = getReverseNucleotideTemplateMap(NotationConstant.NOTATION_SOURCE);
+        return templates;
     }
 
     /**
@@ -148,23 +217,44 @@ public class NucleotideFactory {
      * @throws java.io.IOException
      */
     public void saveNucleotideTemplates() throws IOException {
+        NotationContext reloaded = NotationContext.getReloadedContext();
+        if (this != ((null == reloaded) ? instance : reloaded.getNucleotideFactory())) {
+            throw new IOException("Only the default nucleotide templates are saved to " + NOTATION_DIRECTORY);
+        }
         File f = new File(NOTATION_DIRECTORY);
         if (!f.exists()) {
             f.mkdir();
         }
         String nucleotideTemplatesXML = NucleotideSequenceParser.getNucleotideTemplatesXML(getNucleotideTemplates());
-        FileOutputStream fos = new FileOutputStream(LOCAL_NUCLEOTIDE_TEMPLATE_FILE_PATH);
-        fos.write(nucleotideTemplatesXML.getBytes());
+
+        //written to a temporary file and renamed, so a crash leaves either the old or the new templates
+        File tmpFile = new File(LOCAL_NUCLEOTIDE_TEMPLATE_FILE_PATH + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            fos.write(nucleotideTemplatesXML.getBytes("UTF-8"));
+            fos.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        File file = new File(LOCAL_NUCLEOTIDE_TEMPLATE_FILE_PATH);
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Unable to rename " + tmpFile.getPath() + " to " + file.getPath());
+            }
+        }
     }
 
     /**
      * key is notation such as R(A)P, value is symblo such as A
+     * @param templates nucleotide templates
      * @param notationSource
      * @return notation/nucleotidSymbol map
      */
-    private static synchronized Map<String, String> getReverseNucleotideTemplateMap(String notationSource) {
+    private static Map<String, String> getReverseNucleotideTemplateMap(Map<String, Map<String, String>> templates, String notationSource) {
         Map<String, String> map = new HashMap<String, String>();
-        Map<String, String> normalMap = nucleotideTemplates.get(notationSource);
+        Map<String, String> normalMap = templates.get(notationSource);
         if (normalMap != null) {
             Set<String> set = normalMap.keySet();
             for (Iterator i = set.iterator(); i.hasNext();) {
@@ -67,6 +67,18 @@ public class Attachment implements Serializable {
 //        connected = false;
     }
 
+    /**
+     * copy constructor
+     * @param attachment attachment to copy
+     */
+    public Attachment(Attachment attachment) {
+        this.id = attachment.id;
+        this.alternateId = attachment.alternateId;
+        this.label = attachment.label;
+        this.capGroupName = attachment.capGroupName;
+        this.capGroupSMILES = attachment.capGroupSMILES;
+    }
+
     public int getId() {
         return id;
     }
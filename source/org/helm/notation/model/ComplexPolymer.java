@@ -21,6 +21,8 @@
  ******************************************************************************/
 package org.helm.notation.model;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -34,6 +36,27 @@ public class ComplexPolymer {
     private List<PolymerEdge> basePairList;
     private Map<String, String> polymerNodeAnnotationMap;
 
+    public ComplexPolymer() {
+    }
+
+    /**
+     * Create a deep copy of a complex polymer, nodes and edges are copied as well
+     * @param polymer complex polymer to copy
+     */
+    public ComplexPolymer(ComplexPolymer polymer) {
+        if (null != polymer.polymerNodeList) {
+            polymerNodeList = new ArrayList<PolymerNode>(polymer.polymerNodeList.size());
+            for (PolymerNode node : polymer.polymerNodeList) {
+                polymerNodeList.add((null == node) ? null : node.copy());
+            }
+        }
+        polymerEdgeList = copyEdgeList(polymer.polymerEdgeList);
+        basePairList = copyEdgeList(polymer.basePairList);
+        if (null != polymer.polymerNodeAnnotationMap) {
+            polymerNodeAnnotationMap = new LinkedHashMap<String, String>(polymer.polymerNodeAnnotationMap);
+        }
+    }
+
     public List<PolymerNode> getPolymerNodeList() {
         return polymerNodeList;
     }
@@ -71,4 +94,15 @@ public class ComplexPolymer {
     public void setPolymerNodeAnnotationMap(Map<String, String> polymerNodeAnnotationMap) {
         this.polymerNodeAnnotationMap = polymerNodeAnnotationMap;
     }
+
+    private static List<PolymerEdge> copyEdgeList(List<PolymerEdge> edgeList) {
+        if (null == edgeList) {
+            return null;
+        }
+        List<PolymerEdge> l = new ArrayList<PolymerEdge>(edgeList.size());
+        for (PolymerEdge edge : edgeList) {
+            l.add((null == edge) ? null : new PolymerEdge(edge));
+        }
+        return l;
+    }
 }
@@ -111,6 +111,28 @@ public class Monomer implements Serializable {
         setAlternateId(alternateId);
     }
 
+    /**
+     * Create a deep copy of a monomer, attachments are copied as well
+     * @param monomer monomer to copy
+     */
+    public Monomer(Monomer monomer) {
+        id = monomer.id;
+        alternateId = monomer.alternateId;
+        naturalAnalog = monomer.naturalAnalog;
+        name = monomer.name;
+        canSMILES = monomer.canSMILES;
+        molfile = monomer.molfile;
+        monomerType = monomer.monomerType;
+        polymerType = monomer.polymerType;
+        newMonomer = monomer.newMonomer;
+        if (null != monomer.attachmentList) {
+            attachmentList = new ArrayList<Attachment>(monomer.attachmentList.size());
+            for (Attachment attachment : monomer.attachmentList) {
+                attachmentList.add((null == attachment) ? null : new Attachment(attachment));
+            }
+        }
+    }
+
     public int getId() {
         return id;
     }
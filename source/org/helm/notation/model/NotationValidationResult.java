@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.model;
+
+/**
+ * This is the data model for the validation result of a single notation in batch validation.
+ * code is one of the result codes defined here, and message is the exception message for invalid notation
+ */
+public class NotationValidationResult {
+
+    public static final int VALID = 0;
+    public static final int INVALID_NOTATION = 1;
+    public static final int INVALID_MONOMER = 2;
+    public static final int INVALID_STRUCTURE = 3;
+    public static final int PROCESSING_ERROR = 4;
+    private int index;
+    private String notation;
+    private int code;
+    private String message;
+
+    public NotationValidationResult() {
+    }
+
+    public NotationValidationResult(int index, String notation, int code, String message) {
+        this.index = index;
+        this.notation = notation;
+        this.code = code;
+        this.message = message;
+    }
+
+    /**
+     * get the 0 based position of the notation in the input
+     * @return index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getNotation() {
+        return notation;
+    }
+
+    public void setNotation(String notation) {
+        this.notation = notation;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public void setCode(int code) {
+        this.code = code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public boolean isValid() {
+        return code == VALID;
+    }
+
+    @Override
+    public String toString() {
+        return index + "\t" + code + "\t" + (null == message ? "" : message);
+    }
+}
@@ -63,6 +63,18 @@ public class Nucleotide implements Serializable {
         this.positionType = postionType;
     }
 
+    /**
+     * copy constructor
+     * @param nucleotide nucleotide to copy
+     */
+    public Nucleotide(Nucleotide nucleotide) {
+        this.positionType = nucleotide.positionType;
+        this.symbol = nucleotide.symbol;
+        this.modified = nucleotide.modified;
+        this.notation = nucleotide.notation;
+        this.naturalAnalog = nucleotide.naturalAnalog;
+    }
+
     public int getPositionType() {
         return positionType;
     }
@@ -60,6 +60,23 @@ public class PolymerEdge {
     private int sourceAttachmentType;
     private int targetAttachmentType;
 
+    public PolymerEdge() {
+    }
+
+    /**
+     * copy constructor
+     * @param edge polymer edge to copy
+     */
+    public PolymerEdge(PolymerEdge edge) {
+        this.edgeNotation = edge.edgeNotation;
+        this.sourceNode = edge.sourceNode;
+        this.targetNode = edge.targetNode;
+        this.connection = edge.connection;
+        this.edgeType = edge.edgeType;
+        this.sourceAttachmentType = edge.sourceAttachmentType;
+        this.targetAttachmentType = edge.targetAttachmentType;
+    }
+
     public String getEdgeNotation() {
         return edgeNotation;
     }
@@ -31,7 +31,28 @@ public class PolymerNode {
     private String id;
     private String label;
     private String anotation;
-    
+
+    public PolymerNode() {
+    }
+
+    /**
+     * copy constructor
+     * @param node polymer node to copy
+     */
+    public PolymerNode(PolymerNode node) {
+        this.id = node.id;
+        this.label = node.label;
+        this.anotation = node.anotation;
+    }
+
+    /**
+     * Create a copy of the same class as this node, subclasses with state of their own override it
+     * @return copy of this node
+     */
+    public PolymerNode copy() {
+        return new PolymerNode(this);
+    }
+
     public String getId() {
         return id;
     }
@@ -37,6 +37,14 @@ public class RNAPolymerNode extends PolymerNode {
         super.setAnotation(node.getAnotation());
     }
     
+    @Override
+    public PolymerNode copy() {
+        RNAPolymerNode node = new RNAPolymerNode(this);
+        node.setSequence(sequence);
+        node.setModifiedSequence(modifiedSequence);
+        return node;
+    }
+
     public String getType() {
         return Monomer.NUCLIEC_ACID_POLYMER_TYPE;
     }
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.model;
+
+/**
+ * This is the data model for one siRNA duplex in batch duplex assembly.
+ * notation and formatedSequences are set for a successful duplex, message is set otherwise
+ */
+public class SirnaDuplexResult {
+
+    private int index;
+    private String senseSequence;
+    private String antiSenseSequence;
+    private String notation;
+    private String[] formatedSequences;
+    private String message;
+
+    public SirnaDuplexResult() {
+    }
+
+    public SirnaDuplexResult(int index, String senseSequence, String antiSenseSequence) {
+        this.index = index;
+        this.senseSequence = senseSequence;
+        this.antiSenseSequence = antiSenseSequence;
+    }
+
+    /**
+     * get the 0 based position of the duplex in the input
+     * @return index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getSenseSequence() {
+        return senseSequence;
+    }
+
+    public void setSenseSequence(String senseSequence) {
+        this.senseSequence = senseSequence;
+    }
+
+    public String getAntiSenseSequence() {
+        return antiSenseSequence;
+    }
+
+    public void setAntiSenseSequence(String antiSenseSequence) {
+        this.antiSenseSequence = antiSenseSequence;
+    }
+
+    public String getNotation() {
+        return notation;
+    }
+
+    public void setNotation(String notation) {
+        this.notation = notation;
+    }
+
+    /**
+     * formated duplex, same as ComplexNotationParser.getFormatedSirnaSequences
+     * @return string array of formated nucleotide sequence
+     */
+    public String[] getFormatedSequences() {
+        return formatedSequences;
+    }
+
+    public void setFormatedSequences(String[] formatedSequences) {
+        this.formatedSequences = formatedSequences;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public boolean isValid() {
+        return null == message;
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.peptide;
+
+import java.io.Serializable;
+
+/**
+ * This class holds the recognition entry of a peptide monomer with some of its R groups capped,
+ * used to identify amino acid fragments by unique SMILES
+ */
+public class CappedMonomerInfo implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String monomerID;
+    private int cappingPatternIndex;
+    private String cxsmiles;
+
+    public CappedMonomerInfo() {
+    }
+
+    public CappedMonomerInfo(String monomerID, int cappingPatternIndex, String cxsmiles) {
+        this.monomerID = monomerID;
+        this.cappingPatternIndex = cappingPatternIndex;
+        this.cxsmiles = cxsmiles;
+    }
+
+    public String getMonomerID() {
+        return monomerID;
+    }
+
+    public void setMonomerID(String monomerID) {
+        this.monomerID = monomerID;
+    }
+
+    /**
+     * index into PeptideStructureParser.CAPPING_PATTERNS, lower index takes precedence when different entries share the same unique SMILES
+     * @return capping pattern index
+     */
+    public int getCappingPatternIndex() {
+        return cappingPatternIndex;
+    }
+
+    public void setCappingPatternIndex(int cappingPatternIndex) {
+        this.cappingPatternIndex = cappingPatternIndex;
+    }
+
+    /**
+     * extended chemaxon smiles of the capped monomer, contains R group positions
+     * @return cxsmiles
+     */
+    public String getCxsmiles() {
+        return cxsmiles;
+    }
+
+    public void setCxsmiles(String cxsmiles) {
+        this.cxsmiles = cxsmiles;
+    }
+}
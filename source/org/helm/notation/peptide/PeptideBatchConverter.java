@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.peptide;
+
+import org.helm.notation.NotationContext;
+import org.helm.notation.StructureException;
+import org.helm.notation.tools.StructureParser;
+import chemaxon.struc.Molecule;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class converts SD files or SMILES files of peptide structures into polymer notation in batch.
+ * Records are decoded on a reader thread, converted in parallel by worker threads, and written in input order by the calling thread,
+ * one tab separated line per record: record number (1 based), name, notation and error message.
+ * A failed record produces an error message in its line and does not stop the batch.
+ * The number of records in flight is bounded, so input of any size is converted in constant memory.
+ * Latency percentiles are exact up to LATENCY_SAMPLE_SIZE records and estimated from a uniform random sample of that size beyond it, the maximum is always exact.
+ */
+public class PeptideBatchConverter {
+
+    public static final String SDF_FORMAT = "sdf";
+    public static final String SMILES_FORMAT = "smiles";
+    public static final String SDF_RECORD_DELIMITER = "$$$$";
+    //records read ahead of the writer per worker thread
+    public static final int RECORDS_IN_FLIGHT_PER_THREAD = 64;
+    //record latencies kept for the percentiles of the report
+    public static final int LATENCY_SAMPLE_SIZE = 8192;
+    private static Logger logger = Logger.getLogger(PeptideBatchConverter.class.toString());
+    //posted by the reader thread after the last record
+    private static final PeptideConversionResult END_OF_INPUT = new PeptideConversionResult(-1, null, null, null, 0);
+
+    /**
+     * This method converts all records with one worker thread per processor
+     * @param input SD file or SMILES file content
+     * @param format SDF_FORMAT or SMILES_FORMAT
+     * @param output tab separated results in input order
+     * @return PeptideBatchReport
+     * @throws java.io.IOException
+     * @throws org.helm.notation.StructureException
+     */
+    public static PeptideBatchReport convert(Reader input, String format, Writer output) throws IOException, StructureException {
+        return convert(input, format, output, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * This method converts all records with a pool of worker threads
+     * @param input SD file or SMILES file content
+     * @param format SDF_FORMAT or SMILES_FORMAT
+     * @param output tab separated results in input order
+     * @param threadCount number of worker threads
+     * @return PeptideBatchReport
+     * @throws java.io.IOException
+     * @throws org.helm.notation.StructureException
+     */
+    public static PeptideBatchReport convert(Reader input, final String format, Writer output, int threadCount) throws IOException, StructureException {
+        if (!SDF_FORMAT.equals(format) && !SMILES_FORMAT.equals(format)) {
+            throw new StructureException("Unsupported batch input format: " + format);
+        }
+        if (threadCount < 1) {
+            threadCount = 1;
+        }
+
+        //recognition tables are loaded once, before any worker runs
+        final PeptideStructureParser parser = PeptideStructureParser.getInstance();
+        parser.getInvariantMap();
+
+        long start = System.currentTimeMillis();
+
+        final BufferedReader reader = (input instanceof BufferedReader) ? (BufferedReader) input : new BufferedReader(input);
+        final Writer writer = (output instanceof BufferedWriter) ? output : new BufferedWriter(output);
+        final Semaphore permits = new Semaphore(threadCount * RECORDS_IN_FLIGHT_PER_THREAD);
+        final BlockingQueue<PeptideConversionResult> completed = new LinkedBlockingQueue<PeptideConversionResult>();
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        //pooled threads do not inherit the library of the caller, a reload during the job does not reach it either
+        final NotationContext context = NotationContext.snapshot();
+        final int[] readCount = new int[1];
+        final IOException[] readError = new IOException[1];
+
+        Thread readerThread = new Thread(new Runnable() {
+
+            public void run() {
+                int index = 0;
+                try {
+                    String[] record = readRecord(reader, format);
+                    while (null != record) {
+                        permits.acquire();
+                        executor.execute(NotationContext.withContext(context, new ConversionTask(parser, index, record[0], record[1], completed)));
+                        index++;
+                        record = readRecord(reader, format);
+                    }
+                } catch (IOException ioe) {
+                    readError[0] = ioe;
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    //queue hand off publishes readCount and readError to the writer
+                    readCount[0] = index;
+                    completed.add(END_OF_INPUT);
+                }
+            }
+        }, "PeptideBatchConverter-reader");
+        readerThread.setDaemon(true);
+
+        int failureCount = 0;
+        long[] latencies = new long[LATENCY_SAMPLE_SIZE];
+        long maxLatency = 0;
+        Random random = new Random();
+        int next = 0;
+        try {
+            readerThread.start();
+
+            Map<Integer, PeptideConversionResult> pending = new HashMap<Integer, PeptideConversionResult>();
+            int total = -1;
+            while (total < 0 || next < total) {
+                PeptideConversionResult result = completed.take();
+                if (result == END_OF_INPUT) {
+                    total = readCount[0];
+                    continue;
+                }
+
+                pending.put(result.getIndex(), result);
+                result = pending.remove(next);
+                while (null != result) {
+                    writeResult(writer, result);
+                    permits.release();
+                    if (!result.isSuccessful()) {
+                        failureCount++;
+                    }
+                    long latency = result.getLatencyNanos();
+                    maxLatency = Math.max(maxLatency, latency);
+                    //reservoir sampling, every record stays in the sample with equal probability
+                    if (next < latencies.length) {
+                        latencies[next] = latency;
+                    } else {
+                        int slot = random.nextInt(next + 1);
+                        if (slot < latencies.length) {
+                            latencies[slot] = latency;
+                        }
+                    }
+                    next++;
+                    result = pending.remove(next);
+                }
+            }
+            writer.flush();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new StructureException("Batch conversion interrupted", ie);
+        } finally {
+            readerThread.interrupt();
+            executor.shutdownNow();
+        }
+
+        if (null != readError[0]) {
+            throw readError[0];
+        }
+
+        PeptideBatchReport report = new PeptideBatchReport();
+        report.setRecordCount(next);
+        report.setFailureCount(failureCount);
+        report.setElapsedMillis(System.currentTimeMillis() - start);
+        long[] sorted = Arrays.copyOf(latencies, Math.min(next, latencies.length));
+        Arrays.sort(sorted);
+        report.setMedianLatencyMillis(getPercentileMillis(sorted, 0.5));
+        report.setP90LatencyMillis(getPercentileMillis(sorted, 0.9));
+        report.setP99LatencyMillis(getPercentileMillis(sorted, 0.99));
+        report.setMaxLatencyMillis(maxLatency / 1000000.0);
+        logger.log(Level.INFO, report.toString());
+        return report;
+    }
+
+    /**
+     * reads the next record
+     * @return {name, structure text}, null at end of input
+     */
+    private static String[] readRecord(BufferedReader reader, String format) throws IOException {
+        String line = reader.readLine();
+        if (SMILES_FORMAT.equals(format)) {
+            while (null != line && line.trim().length() == 0) {
+                line = reader.readLine();
+            }
+            if (null == line) {
+                return null;
+            }
+            String[] tokens = line.trim().split("\\s+", 2);
+            String name = (tokens.length > 1) ? tokens[1] : "";
+            return new String[]{name, tokens[0]};
+        }
+
+        StringBuilder sb = new StringBuilder();
+        String name = null;
+        while (null != line && !line.trim().equals(SDF_RECORD_DELIMITER)) {
+            if (null == name) {
+                name = line.trim();
+            }
+            sb.append(line);
+            sb.append("\n");
+            line = reader.readLine();
+        }
+        if (sb.toString().trim().length() == 0) {
+            if (null == line) {
+                //trailing blank lines after the last delimiter
+                return null;
+            }
+            return new String[]{"", ""};
+        }
+        return new String[]{name, sb.toString()};
+    }
+
+    private static void writeResult(Writer writer, PeptideConversionResult result) throws IOException {
+        writer.write(String.valueOf(result.getIndex() + 1));
+        writer.write("\t");
+        writer.write(clean(result.getName()));
+        writer.write("\t");
+        writer.write(clean(result.getNotation()));
+        writer.write("\t");
+        writer.write(clean(result.getMessage()));
+        writer.write("\n");
+    }
+
+    private static String clean(String s) {
+        if (null == s) {
+            return "";
+        }
+        return s.replaceAll("[\\t\\r\\n]+", " ");
+    }
+
+    /**
+     * nearest rank percentile
+     */
+    private static double getPercentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        if (rank < 1) {
+            rank = 1;
+        }
+        return sorted[rank - 1] / 1000000.0;
+    }
+
+    private static class ConversionTask implements Runnable {
+
+        private PeptideStructureParser parser;
+        private int index;
+        private String name;
+        private String structure;
+        private BlockingQueue<PeptideConversionResult> completed;
+
+        public ConversionTask(PeptideStructureParser parser, int index, String name, String structure, BlockingQueue<PeptideConversionResult> completed) {
+            this.parser = parser;
+            this.index = index;
+            this.name = name;
+            this.structure = structure;
+            this.completed = completed;
+        }
+
+        public void run() {
+            long start = System.nanoTime();
+            String notation = null;
+            String message = null;
+            try {
+                if (structure.trim().length() == 0) {
+                    message = "Empty structure record";
+                } else {
+                    Molecule mol = StructureParser.getMolecule(structure);
+                    if (null == mol) {
+                        message = "Unable to read structure";
+                    } else {
+                        notation = parser.molecule2notation(mol);
+                    }
+                }
+            } catch (Exception e) {
+                message = (null == e.getMessage()) ? e.toString() : e.getMessage();
+            } finally {
+                if (null == notation && null == message) {
+                    message = "Conversion aborted";
+                }
+                //always post a result, the writer waits for every index
+                completed.add(new PeptideConversionResult(index, name, notation, message, System.nanoTime() - start));
+            }
+        }
+    }
+}
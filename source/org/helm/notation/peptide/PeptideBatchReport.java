@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.peptide;
+
+/**
+ * This is the summary of a batch conversion run: record counts, throughput and per record latency percentiles
+ */
+public class PeptideBatchReport {
+
+    private int recordCount;
+    private int failureCount;
+    private long elapsedMillis;
+    private double medianLatencyMillis;
+    private double p90LatencyMillis;
+    private double p99LatencyMillis;
+    private double maxLatencyMillis;
+
+    public PeptideBatchReport() {
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public void setRecordCount(int recordCount) {
+        this.recordCount = recordCount;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(int failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    /**
+     * wall clock time of the whole run, from first read to last write
+     * @return elapsed time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return records per second
+     */
+    public double getThroughput() {
+        if (elapsedMillis <= 0) {
+            return 0;
+        }
+        return recordCount * 1000.0 / elapsedMillis;
+    }
+
+    public double getMedianLatencyMillis() {
+        return medianLatencyMillis;
+    }
+
+    public void setMedianLatencyMillis(double medianLatencyMillis) {
+        this.medianLatencyMillis = medianLatencyMillis;
+    }
+
+    public double getP90LatencyMillis() {
+        return p90LatencyMillis;
+    }
+
+    public void setP90LatencyMillis(double p90LatencyMillis) {
+        this.p90LatencyMillis = p90LatencyMillis;
+    }
+
+    public double getP99LatencyMillis() {
+        return p99LatencyMillis;
+    }
+
+    public void setP99LatencyMillis(double p99LatencyMillis) {
+        this.p99LatencyMillis = p99LatencyMillis;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    public void setMaxLatencyMillis(double maxLatencyMillis) {
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Records: ");
+        sb.append(recordCount);
+        sb.append(", failed: ");
+        sb.append(failureCount);
+        sb.append(", elapsed: ");
+        sb.append(elapsedMillis);
+        sb.append(" ms, throughput: ");
+        sb.append(String.format("%.1f", getThroughput()));
+        sb.append(" records/s, latency p50/p90/p99/max: ");
+        sb.append(String.format("%.2f/%.2f/%.2f/%.2f", medianLatencyMillis, p90LatencyMillis, p99LatencyMillis, maxLatencyMillis));
+        sb.append(" ms");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.peptide;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This is the persisted form of the capped peptide monomer recognition tables.
+ * For each monomer signature, the capped cxsmiles, unique smiles and structure invariants are stored in the order of PeptideStructureParser.CAPPING_PATTERNS,
+ * so that only new or changed monomers need to be recomputed.
+ * Entries depend on structure only, not on monomer ID, so the table is shared by all monomer libraries and entries are never removed.
+ */
+public class PeptideRecognitionTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //increase when table content or capping patterns change
+    public static final int CURRENT_VERSION = 3;
+    private int version = CURRENT_VERSION;
+    private Map<String, String[]> cxsmilesMap = new HashMap<String, String[]>();
+    private Map<String, String[]> uniqueSmilesMap = new HashMap<String, String[]>();
+    private Map<String, String[]> invariantMap = new HashMap<String, String[]>();
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public Map<String, String[]> getCxsmilesMap() {
+        return cxsmilesMap;
+    }
+
+    public void setCxsmilesMap(Map<String, String[]> cxsmilesMap) {
+        this.cxsmilesMap = cxsmilesMap;
+    }
+
+    public Map<String, String[]> getUniqueSmilesMap() {
+        return uniqueSmilesMap;
+    }
+
+    public void setUniqueSmilesMap(Map<String, String[]> uniqueSmilesMap) {
+        this.uniqueSmilesMap = uniqueSmilesMap;
+    }
+
+    public Map<String, String[]> getInvariantMap() {
+        return invariantMap;
+    }
+
+    public void setInvariantMap(Map<String, String[]> invariantMap) {
+        this.invariantMap = invariantMap;
+    }
+}
@@ -23,6 +23,7 @@ package org.helm.notation.peptide;
 
 import org.helm.notation.MonomerException;
 import org.helm.notation.MonomerFactory;
+import org.helm.notation.NotationConstant;
 import org.helm.notation.StructureException;
 import org.helm.notation.tools.*;
 import chemaxon.struc.MolAtom;
@@ -30,116 +31,289 @@ import chemaxon.struc.MolBond;
 import chemaxon.struc.Molecule;
 import org.helm.notation.model.Attachment;
 import org.helm.notation.model.Monomer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.jdom.JDOMException;
 
 /**
  * This class provides methods that converter peptide chemical structures into polymer notation
  * Handles amide bond and disulfide bond only
+ * Recognition tables are shared and immutable after initialization, and conversion state is kept per thread, so one instance can convert on many threads at once
  * @author zhangtianhong
  */
 public class PeptideStructureParser {
 
-    private List<String> IDList = new ArrayList<String>();
-    //extended chemaxon smiles cxsmiles, contains R Group position
-    private List<String> nonCappedSmilesList = new ArrayList<String>();
-    private List<String> R1CappedSmilesList = new ArrayList<String>();
-    private List<String> R2CappedSmilesList = new ArrayList<String>();
-    private List<String> R3CappedSmilesList = new ArrayList<String>();
-    private List<String> R1R2CappedSmilesList = new ArrayList<String>();
-    private List<String> R1R3CappedSmilesList = new ArrayList<String>();
-    private List<String> R2R3CappedSmilesList = new ArrayList<String>();
-    private List<String> allCappedSmilesList = new ArrayList<String>();
-    //unique smiles, smiles:u
-    private List<String> nonCappedUniqueSmilesList = new ArrayList<String>();
-    private List<String> R1CappedUniqueSmilesList = new ArrayList<String>();
-    private List<String> R2CappedUniqueSmilesList = new ArrayList<String>();
-    private List<String> R3CappedUniqueSmilesList = new ArrayList<String>();
-    private List<String> R1R2CappedUniqueSmilesList = new ArrayList<String>();
-    private List<String> R1R3CappedUniqueSmilesList = new ArrayList<String>();
-    private List<String> R2R3CappedUniqueSmilesList = new ArrayList<String>();
-    private List<String> allCappedUniqueSmilesList = new ArrayList<String>();
+    //R groups capped in each pattern, in the order of lookup precedence
+    public static final int[][] CAPPING_PATTERNS = {{}, {1}, {2}, {3}, {1, 2}, {1, 3}, {2, 3}, {1, 2, 3}};
+    public static final String RECOGNITION_TABLE_FILE_NAME = "PeptideRecognitionTable.ser";
+    public static final String RECOGNITION_TABLE_FILE_PATH = NotationConstant.NOTATION_DIRECTORY + System.getProperty("file.separator") + RECOGNITION_TABLE_FILE_NAME;
+    private static Logger logger = Logger.getLogger(PeptideStructureParser.class.toString());
+    //per monomer library: structure invariant of capped monomer to (unique smiles (smiles:u) to recognition entry)
+    //tables are immutable and the list is replaced on change, so lookups take no lock; a library no longer in use is dropped at the next build
+    private volatile List<LibraryTable> libraryTables = Collections.emptyList();
     private static PeptideStructureParser instance;
-    private int seedID = 1;
+    //fragment ID seed is conversion state, kept per thread so that conversions can run concurrently
+    private final ThreadLocal<Integer> seedID = new ThreadLocal<Integer>() {
+
+        @Override
+        protected Integer initialValue() {
+            return Integer.valueOf(1);
+        }
+    };
 
     private PeptideStructureParser() {
     }
 
-    public static PeptideStructureParser getInstance() {
+    public static synchronized PeptideStructureParser getInstance() {
         if (null == instance) {
             instance = new PeptideStructureParser();
         }
         return instance;
     }
 
+    /**
+     * get fragment ID seed of current thread, used by the fragment tree methods
+     * @return seed ID
+     * @deprecated molecule2notation no longer builds fragment trees
+     */
+    @Deprecated
     public int getSeedID() {
-        return seedID;
+        return seedID.get().intValue();
     }
 
+    /**
+     * set fragment ID seed of current thread, used by the fragment tree methods
+     * @param seedID
+     * @deprecated molecule2notation no longer builds fragment trees
+     */
+    @Deprecated
     public void setSeedID(int seedID) {
-        this.seedID = seedID;
+        this.seedID.set(Integer.valueOf(seedID));
+    }
+
+    private int nextSeedID() {
+        int id = getSeedID();
+        setSeedID(id + 1);
+        return id;
+    }
+
+    /**
+     * This method builds the capped monomer recognition tables for all peptide monomers of the library of the current thread.
+     * Tables persisted in RECOGNITION_TABLE_FILE_PATH are reused, only monomers whose structure is not in the file yet are computed, and the file is updated.
+     * The file is keyed by monomer signature and shared by all libraries, so libraries used alternately do not recompute each other's entries
+     * @throws org.helm.notation.MonomerException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     * @throws org.helm.notation.StructureException
+     */
+    public synchronized void initAminoAcidLists() throws MonomerException, IOException, JDOMException, StructureException {
+        initAminoAcidLists(MonomerFactory.getInstance());
     }
 
-    public void initAminoAcidLists() throws MonomerException, IOException, JDOMException, StructureException {
-        Map<String, Monomer> idMonomerMap = MonomerFactory.getInstance().getMonomerDB().get(Monomer.PEPTIDE_POLYMER_TYPE);
+    private synchronized Map<String, Map<String, CappedMonomerInfo>> initAminoAcidLists(MonomerFactory factory) throws MonomerException, IOException, JDOMException, StructureException {
+        Map<String, Monomer> idMonomerMap = factory.getMonomerDB().get(Monomer.PEPTIDE_POLYMER_TYPE);
+
+        PeptideRecognitionTable table = loadRecognitionTable();
+        boolean changed = false;
+        if (null == table) {
+            table = new PeptideRecognitionTable();
+            changed = true;
+        }
+
         Set<String> idSet = idMonomerMap.keySet();
         for (Iterator<String> i = idSet.iterator(); i.hasNext();) {
             String id = i.next();
-            IDList.add(id);
-
             Monomer m = idMonomerMap.get(id);
-//            String smiles = m.getCanSMILES();
-//            Molecule mol = StructureParser.getMolecule(smiles);
-//            mol.setAbsStereo(true);
-            
-            String nonCappedSmiles = getCappedSmiles(m, new int[0]);
-            String nonCappedUniqueSmiles = getCappedUniqueSmiles(m, new int[0]);
-            nonCappedSmilesList.add(nonCappedSmiles);
-            nonCappedUniqueSmilesList.add(nonCappedUniqueSmiles);
+            String signature = getMonomerSignature(m);
+            if (table.getInvariantMap().containsKey(signature)) {
+                continue;
+            }
 
-            String r1CappedSmiles = getCappedSmiles(m, new int[]{1});
-            String r1CappedUniqueSmiles = getCappedUniqueSmiles(m, new int[]{1});
-            R1CappedSmilesList.add(r1CappedSmiles);
-            R1CappedUniqueSmilesList.add(r1CappedUniqueSmiles);
+            String[] cxsmiles = new String[CAPPING_PATTERNS.length];
+            String[] uniqueSmiles = new String[CAPPING_PATTERNS.length];
+            String[] invariants = new String[CAPPING_PATTERNS.length];
+            for (int j = 0; j < CAPPING_PATTERNS.length; j++) {
+                Molecule capped = getCappedMolecule(m, CAPPING_PATTERNS[j]);
+                invariants[j] = getStructureInvariant(capped);
+                cxsmiles[j] = StructureParser.getUniqueExtendedSMILES(capped);
+                //only hydrogens were implicitized for the extended smiles, which unique smiles does as well
+                uniqueSmiles[j] = StructureParser.getUniqueSmiles(capped);
+            }
+            table.getCxsmilesMap().put(signature, cxsmiles);
+            table.getUniqueSmilesMap().put(signature, uniqueSmiles);
+            table.getInvariantMap().put(signature, invariants);
+            changed = true;
+        }
 
-            String r2CappedSmiles = getCappedSmiles(m, new int[]{2});
-            String r2CappedUniqueSmiles = getCappedUniqueSmiles(m, new int[]{2});
-            R2CappedSmilesList.add(r2CappedSmiles);
-            R2CappedUniqueSmilesList.add(r2CappedUniqueSmiles);
+        if (changed) {
+            try {
+                saveRecognitionTable(table);
+            } catch (IOException ioe) {
+                logger.log(Level.INFO, "Unable to save peptide recognition table file: " + RECOGNITION_TABLE_FILE_NAME);
+            }
+        }
 
-            String r3CappedSmiles = getCappedSmiles(m, new int[]{3});
-            String r3CappedUniqueSmiles = getCappedUniqueSmiles(m, new int[]{3});
-            R3CappedSmilesList.add(r3CappedSmiles);
-            R3CappedUniqueSmilesList.add(r3CappedUniqueSmiles);
+        Map<String, Map<String, CappedMonomerInfo>> map = new HashMap<String, Map<String, CappedMonomerInfo>>();
+        for (Iterator<String> i = idSet.iterator(); i.hasNext();) {
+            String id = i.next();
+            String signature = getMonomerSignature(idMonomerMap.get(id));
+            String[] cxsmiles = table.getCxsmilesMap().get(signature);
+            String[] uniqueSmiles = table.getUniqueSmilesMap().get(signature);
+            String[] invariants = table.getInvariantMap().get(signature);
+            for (int j = 0; j < CAPPING_PATTERNS.length; j++) {
+                Map<String, CappedMonomerInfo> smilesMap = map.get(invariants[j]);
+                if (null == smilesMap) {
+                    smilesMap = new HashMap<String, CappedMonomerInfo>();
+                    map.put(invariants[j], smilesMap);
+                }
+                addCappedMonomerInfo(smilesMap, uniqueSmiles[j], new CappedMonomerInfo(id, j, cxsmiles[j]));
+            }
+        }
+        Map<String, Map<String, CappedMonomerInfo>> invariantMap = Collections.unmodifiableMap(map);
+        List<LibraryTable> tables = new ArrayList<LibraryTable>();
+        for (LibraryTable libraryTable : libraryTables) {
+            MonomerFactory tableFactory = libraryTable.factory.get();
+            if (null != tableFactory && tableFactory != factory) {
+                tables.add(libraryTable);
+            }
+        }
+        tables.add(new LibraryTable(factory, invariantMap));
+        libraryTables = Collections.unmodifiableList(tables);
+        return invariantMap;
+    }
 
-            String r1r2CappedSmiles = getCappedSmiles(m, new int[]{1, 2});
-            String r1r2CappedUniqueSmiles = getCappedUniqueSmiles(m, new int[]{1, 2});
-            R1R2CappedSmilesList.add(r1r2CappedSmiles);
-            R1R2CappedUniqueSmilesList.add(r1r2CappedUniqueSmiles);
+    /**
+     * @return recognition tables of the library of the current thread, built on first use; only a build takes the parser lock
+     */
+    Map<String, Map<String, CappedMonomerInfo>> getInvariantMap() throws StructureException, IOException {
+        try {
+            MonomerFactory factory = MonomerFactory.getInstance();
+            Map<String, Map<String, CappedMonomerInfo>> invariantMap = findInvariantMap(factory);
+            if (null == invariantMap) {
+                synchronized (this) {
+                    //another thread may have built it while this one waited
+                    invariantMap = findInvariantMap(factory);
+                    if (null == invariantMap) {
+                        invariantMap = initAminoAcidLists(factory);
+                    }
+                }
+            }
+            return invariantMap;
+        } catch (MonomerException me) {
+            throw new StructureException("Unable to initialize amino acid lists", me);
+        } catch (JDOMException je) {
+            throw new StructureException("Unable to initialize amino acid lists", je);
+        }
+    }
 
-            String r1r3CappedSmiles = getCappedSmiles(m, new int[]{1, 3});
-            String r1r3CappedUniqueSmiles = getCappedUniqueSmiles(m, new int[]{1, 3});
-            R1R3CappedSmilesList.add(r1r3CappedSmiles);
-            R1R3CappedUniqueSmilesList.add(r1r3CappedUniqueSmiles);
+    private Map<String, Map<String, CappedMonomerInfo>> findInvariantMap(MonomerFactory factory) {
+        for (LibraryTable libraryTable : libraryTables) {
+            if (libraryTable.factory.get() == factory) {
+                return libraryTable.invariantMap;
+            }
+        }
+        return null;
+    }
 
-            String r2r3CappedSmiles = getCappedSmiles(m, new int[]{2, 3});
-            String r2r3CappedUniqueSmiles = getCappedUniqueSmiles(m, new int[]{2, 3});
-            R2R3CappedSmilesList.add(r2r3CappedSmiles);
-            R2R3CappedUniqueSmilesList.add(r2r3CappedUniqueSmiles);
+    /**
+     * monomer signature covers everything the capped smiles are generated from
+     */
+    private String getMonomerSignature(Monomer monomer) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(monomer.getCanSMILES());
+        List<Attachment> attachments = monomer.getAttachmentList();
+        if (null != attachments) {
+            for (Attachment att : attachments) {
+                sb.append("|");
+                sb.append(att.getLabel());
+                sb.append("=");
+                sb.append(att.getCapGroupSMILES());
+            }
+        }
+        return sb.toString();
+    }
 
+    private PeptideRecognitionTable loadRecognitionTable() {
+        File tableFile = new File(RECOGNITION_TABLE_FILE_PATH);
+        if (!tableFile.exists()) {
+            return null;
+        }
+
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(tableFile)));
+            PeptideRecognitionTable table = (PeptideRecognitionTable) ois.readObject();
+            if (table.getVersion() == PeptideRecognitionTable.CURRENT_VERSION) {
+                logger.log(Level.INFO, RECOGNITION_TABLE_FILE_PATH + " is used for peptide recognition table initialization");
+                return table;
+            }
+        } catch (Exception e) {
+            logger.log(Level.INFO, "Unable to use local peptide recognition table file: " + RECOGNITION_TABLE_FILE_NAME);
+        } finally {
+            if (null != ois) {
+                try {
+                    ois.close();
+                } catch (IOException ioe) {
+                }
+            }
+        }
+        tableFile.delete();
+        logger.log(Level.INFO, "Deleted local peptide recognition table file: " + RECOGNITION_TABLE_FILE_NAME);
+        return null;
+    }
+
+    private void saveRecognitionTable(PeptideRecognitionTable table) throws IOException {
+        File dir = new File(NotationConstant.NOTATION_DIRECTORY);
+        if (!dir.exists()) {
+            dir.mkdir();
+        }
 
-            String allCappedSmiles = getCappedSmiles(m, new int[]{1, 2, 3});
-            String allCapppedUniqueSmiles = getCappedUniqueSmiles(m, new int[]{1, 2, 3});
-            allCappedSmilesList.add(allCappedSmiles);
-            allCappedUniqueSmilesList.add(allCapppedUniqueSmiles);
+        File tmpFile = new File(RECOGNITION_TABLE_FILE_PATH + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmpFile);
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(out));
+            oos.writeObject(table);
+            oos.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        //renameTo does not replace an existing file on all platforms
+        File tableFile = new File(RECOGNITION_TABLE_FILE_PATH);
+        if (!tmpFile.renameTo(tableFile)) {
+            tableFile.delete();
+            if (!tmpFile.renameTo(tableFile)) {
+                throw new IOException("Unable to rename " + tmpFile.getPath() + " to " + tableFile.getPath());
+            }
+        }
+    }
+
+    /**
+     * first monomer wins within the same capping pattern, and less capped pattern wins across patterns
+     */
+    private void addCappedMonomerInfo(Map<String, CappedMonomerInfo> map, String uniqueSmiles, CappedMonomerInfo info) {
+        CappedMonomerInfo existing = map.get(uniqueSmiles);
+        if (null == existing || info.getCappingPatternIndex() < existing.getCappingPatternIndex()) {
+            map.put(uniqueSmiles, info);
         }
     }
 
@@ -160,24 +334,169 @@ public class PeptideStructureParser {
             throw new StructureException("Input structure can't be a mixture");
         }
 
-        setSeedID(1);
-
-        PeptideFragment pf = new PeptideFragment();
-        pf.setMolecule(molecule);
-        pf.setLevel(1);
-        Tree<PeptideFragment> fragTree = new Tree<PeptideFragment>(pf);
+        //resolved once, the whole conversion uses the tables of one library
+        Map<String, Map<String, CappedMonomerInfo>> invariantMap = getInvariantMap();
 
-        breakPeptideBonds(fragTree);
+        //bond cleavage modifies the molecule, keep input intact
+        List<Molecule> residues = cleaveResidues(molecule.cloneMolecule());
 
-        rollUp(fragTree);
+        List<AminoAcidInfo> residueInfos = new ArrayList<AminoAcidInfo>();
+        for (Molecule residue : residues) {
+            residueInfos.add(getAminoAcidInfo(residue, invariantMap));
+        }
 
-        List<List<String>> monomerIDsList = fragTree.getHead().getMonomerIDsList();
-        List<List<Map<String, String>>> connectionMapsList = fragTree.getHead().getConnectionMapsList();
+        List<List<String>> monomerIDsList = new ArrayList<List<String>>();
+        List<List<Map<String, String>>> connectionMapsList = new ArrayList<List<Map<String, String>>>();
+        assembleResidues(residueInfos, monomerIDsList, connectionMapsList);
 
         String notation = generateNotation(monomerIDsList, connectionMapsList);
         return notation;
     }
 
+    /**
+     * This method identifies all cleavable disulfide and amide bonds in one
+     * traversal, cuts them together and returns the resulting residue fragments.
+     * Both atoms of each cleaved bond are capped with R group atoms sharing the
+     * same R group id, which is later used as the connectivity key.
+     * @param mol molecule to be cleaved, will be modified
+     * @return list of residue fragments
+     */
+    private List<Molecule> cleaveResidues(Molecule mol) {
+        MolBond[] bonds = mol.getBondArray();
+        List<MolBond> cleavableBonds = new ArrayList<MolBond>();
+        for (MolBond bond : bonds) {
+            if (isDisulfideBond(bond) || isAmideBond(bond)) {
+                cleavableBonds.add(bond);
+            }
+        }
+
+        for (int i = 0; i < cleavableBonds.size(); i++) {
+            MolBond bond = cleavableBonds.get(i);
+            int rGroupId = i + 1;
+
+            MolAtom atom1 = bond.getAtom1();
+            MolAtom atom2 = bond.getAtom2();
+
+            MolAtom r1Atom = new MolAtom(MolAtom.RGROUP);
+            r1Atom.setRgroup(rGroupId);
+            MolAtom r2Atom = new MolAtom(MolAtom.RGROUP);
+            r2Atom.setRgroup(rGroupId);
+
+            mol.removeEdge(bond);
+            mol.add(r1Atom);
+            mol.add(new MolBond(atom1, r1Atom));
+            mol.add(r2Atom);
+            mol.add(new MolBond(atom2, r2Atom));
+        }
+
+        Molecule[] fragments = mol.convertToFrags();
+        List<Molecule> l = new ArrayList<Molecule>();
+        for (Molecule fragment : fragments) {
+            l.add(fragment);
+        }
+        return l;
+    }
+
+    /**
+     * This method assembles residues into polymer chains using the connectivity
+     * map built from the shared R group keys. R2-R1 connections become backbone
+     * links, all other connections remain as edges. A ring made only of
+     * backbone links is opened in front of its first residue, and the closing
+     * link is kept as an edge. Chains are ordered by their first residue in
+     * fragment order.
+     * @param residueInfos monomer ID and R group map for each residue
+     * @param monomerIDsList output, monomer IDs for each chain
+     * @param connectionMapsList output, remaining connection maps for each chain
+     * @throws org.helm.notation.StructureException
+     */
+    private void assembleResidues(List<AminoAcidInfo> residueInfos, List<List<String>> monomerIDsList, List<List<Map<String, String>>> connectionMapsList) throws StructureException {
+        int count = residueInfos.size();
+
+        Map<String, int[]> connectivityMap = new HashMap<String, int[]>();
+        for (int i = 0; i < count; i++) {
+            for (String key : residueInfos.get(i).getRgroupMap().keySet()) {
+                int[] ends = connectivityMap.get(key);
+                if (null == ends) {
+                    connectivityMap.put(key, new int[]{i, -1});
+                } else if (ends[1] < 0) {
+                    ends[1] = i;
+                } else {
+                    throw new StructureException("Connection " + key + " is shared by more than two residues");
+                }
+            }
+        }
+
+        int[] next = new int[count];
+        int[] previous = new int[count];
+        String[] linkKeys = new String[count];
+        for (int i = 0; i < count; i++) {
+            next[i] = -1;
+            previous[i] = -1;
+        }
+
+        for (Map.Entry<String, int[]> entry : connectivityMap.entrySet()) {
+            String key = entry.getKey();
+            int[] ends = entry.getValue();
+            if (ends[1] < 0) {
+                throw new StructureException("Connection " + key + " is not paired");
+            }
+            String rgroup1 = residueInfos.get(ends[0]).getRgroupMap().get(key);
+            String rgroup2 = residueInfos.get(ends[1]).getRgroupMap().get(key);
+
+            int from = -1;
+            int to = -1;
+            if (rgroup1.equals("R2") && rgroup2.equals("R1")) {
+                from = ends[0];
+                to = ends[1];
+            } else if (rgroup1.equals("R1") && rgroup2.equals("R2")) {
+                from = ends[1];
+                to = ends[0];
+            }
+
+            if (from >= 0) {
+                next[from] = to;
+                previous[to] = from;
+                linkKeys[to] = key;
+            }
+        }
+
+        boolean[] visited = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            if (visited[i]) {
+                continue;
+            }
+
+            //i is the lowest unvisited residue, find the head of its chain
+            int start = i;
+            while (previous[start] >= 0 && previous[start] != i) {
+                start = previous[start];
+            }
+            if (previous[start] == i) {
+                //backbone ring, open it in front of residue i
+                start = i;
+            }
+
+            List<String> monomerIDs = new ArrayList<String>();
+            List<Map<String, String>> connectionMaps = new ArrayList<Map<String, String>>();
+            int current = start;
+            do {
+                AminoAcidInfo info = residueInfos.get(current);
+                if (current != start) {
+                    int prior = previous[current];
+                    info.getRgroupMap().remove(linkKeys[current]);
+                    residueInfos.get(prior).getRgroupMap().remove(linkKeys[current]);
+                }
+                monomerIDs.add(info.getMonomerID());
+                connectionMaps.add(info.getRgroupMap());
+                visited[current] = true;
+                current = next[current];
+            } while (current >= 0 && current != start);
+
+            monomerIDsList.add(monomerIDs);
+            connectionMapsList.add(connectionMaps);
+        }
+    }
+
     private String generateNotation(List<List<String>> monomerIDsList, List<List<Map<String, String>>> connectionMapsList) throws StructureException, IOException {
 
         List<String> simpleNotations = new ArrayList<String>();
@@ -264,7 +583,7 @@ public class PeptideStructureParser {
         return sb.toString();
     }
 
-    private String getCappedSmiles(Monomer monomer, int[] rgroupIDs) throws IOException, StructureException {
+    private Molecule getCappedMolecule(Monomer monomer, int[] rgroupIDs) throws IOException, StructureException {
         String molSmi = monomer.getCanSMILES();
         Molecule mol = StructureParser.getMolecule(molSmi);
         for (int rid : rgroupIDs) {
@@ -282,82 +601,66 @@ public class PeptideStructureParser {
             }
         }
         mol.setAbsStereo(true);
-        return StructureParser.getUniqueExtendedSMILES(mol);
+        return mol;
     }
-    
-    private String getCappedUniqueSmiles(Monomer monomer, int[] rgroupIDs) throws IOException, StructureException {
-        String molSmi = monomer.getCanSMILES();
-        Molecule mol = StructureParser.getMolecule(molSmi);
-        for (int rid : rgroupIDs) {
-            MolAtom rAtom = null;
-            try {
-                rAtom = StructureParser.getRgroupAtom(mol, rid);
-            } catch (StructureException se) {
-            }
-            if (null != rAtom) {
-                Attachment att = monomer.getAttachment("R" + rid);
-                String attSmi = att.getCapGroupSMILES();
-                Molecule attMol = StructureParser.getMolecule(attSmi);
-                MolAtom attAtom = StructureParser.getRgroupAtom(attMol, rid);
-                StructureParser.merge(mol, rAtom, attMol, attAtom);
+
+    /**
+     * This method generates a cheap structure invariant of the molecule:
+     * heavy atom count, R group count, ring count and element histogram.
+     * Identical structures always share the same invariant, so fragments
+     * without matching invariant can be rejected before canonicalization.
+     * Hydrogen atoms are ignored, explicit or implicit.
+     * @param mol molecule
+     * @return invariant string
+     */
+    private String getStructureInvariant(Molecule mol) {
+        TreeMap<Integer, Integer> elementCountMap = new TreeMap<Integer, Integer>();
+        int heavyAtomCount = 0;
+        int rgroupCount = 0;
+        for (int i = 0; i < mol.getAtomCount(); i++) {
+            int atno = mol.getAtom(i).getAtno();
+            if (atno == MolAtom.RGROUP) {
+                rgroupCount++;
+            } else if (atno != 1) {
+                heavyAtomCount++;
+                Integer count = elementCountMap.get(atno);
+                elementCountMap.put(atno, null == count ? 1 : count.intValue() + 1);
             }
         }
-        mol.setAbsStereo(true);
-        return StructureParser.getUniqueSmiles(mol);
+        //cyclomatic number, every hydrogen or R group atom adds one atom and one bond
+        int ringCount = mol.getBondCount() - mol.getAtomCount() + mol.getFragCount();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(heavyAtomCount);
+        sb.append("|");
+        sb.append(rgroupCount);
+        sb.append("|");
+        sb.append(ringCount);
+        for (Map.Entry<Integer, Integer> entry : elementCountMap.entrySet()) {
+            sb.append("|");
+            sb.append(entry.getKey());
+            sb.append(":");
+            sb.append(entry.getValue());
+        }
+        return sb.toString();
     }
-    
 
-    private AminoAcidInfo getAminoAcidInfo(Molecule molecule) throws IOException, StructureException {
-        String canSmi = StructureParser.getUniqueSmiles(molecule);
+    private AminoAcidInfo getAminoAcidInfo(Molecule molecule, Map<String, Map<String, CappedMonomerInfo>> invariantMap) throws IOException, StructureException {
+        //invariant prefilter, canonical smiles only disambiguates the remaining candidates
+        Map<String, CappedMonomerInfo> candidates = invariantMap.get(getStructureInvariant(molecule));
+        if (null == candidates) {
+            throw new StructureException("Unknown amino acid structure: " + molecule.toFormat("smiles"));
+        }
 
-        String cxSmi = StructureParser.getUniqueExtendedSMILES(molecule);
-        String monomerID = null;
-        Map<String, String> rgroupMap = null;
-
-        if (nonCappedUniqueSmilesList.contains(canSmi)) {
-            int index = nonCappedUniqueSmilesList.indexOf(canSmi);
-            monomerID = IDList.get(index);
-            String monomerCxsmi = nonCappedSmilesList.get(index);
-            rgroupMap = getRgroupMap(cxSmi, monomerCxsmi);
-
-        } else if (R1CappedUniqueSmilesList.contains(canSmi)) {
-            int index = R1CappedUniqueSmilesList.indexOf(canSmi);
-            monomerID = IDList.get(index);
-            String monomerCxsmi = R1CappedSmilesList.get(index);
-            rgroupMap = getRgroupMap(cxSmi, monomerCxsmi);
-        } else if (R2CappedUniqueSmilesList.contains(canSmi)) {
-            int index = R2CappedUniqueSmilesList.indexOf(canSmi);
-            monomerID = IDList.get(index);
-            String monomerCxsmi = R2CappedSmilesList.get(index);
-            rgroupMap = getRgroupMap(cxSmi, monomerCxsmi);
-        } else if (R3CappedUniqueSmilesList.contains(canSmi)) {
-            int index = R3CappedUniqueSmilesList.indexOf(canSmi);
-            monomerID = IDList.get(index);
-            String monomerCxsmi = R3CappedSmilesList.get(index);
-            rgroupMap = getRgroupMap(cxSmi, monomerCxsmi);
-        } else if (R1R2CappedUniqueSmilesList.contains(canSmi)) {
-            int index = R1R2CappedUniqueSmilesList.indexOf(canSmi);
-            monomerID = IDList.get(index);
-            String monomerCxsmi = R1R2CappedSmilesList.get(index);
-            rgroupMap = getRgroupMap(cxSmi, monomerCxsmi);
-        } else if (R1R3CappedUniqueSmilesList.contains(canSmi)) {
-            int index = R1R3CappedUniqueSmilesList.indexOf(canSmi);
-            monomerID = IDList.get(index);
-            String monomerCxsmi = R1R3CappedSmilesList.get(index);
-            rgroupMap = getRgroupMap(cxSmi, monomerCxsmi);
-        } else if (R2R3CappedUniqueSmilesList.contains(canSmi)) {
-            int index = R2R3CappedUniqueSmilesList.indexOf(canSmi);
-            monomerID = IDList.get(index);
-            String monomerCxsmi = R2R3CappedSmilesList.get(index);
-            rgroupMap = getRgroupMap(cxSmi, monomerCxsmi);
-        } else if (allCappedUniqueSmilesList.contains(canSmi)) {
-            int index = allCappedUniqueSmilesList.indexOf(canSmi);
-            monomerID = IDList.get(index);
-            String monomerCxsmi = allCappedSmilesList.get(index);
-            rgroupMap = getRgroupMap(cxSmi, monomerCxsmi);
-        } else {
+        String canSmi = StructureParser.getUniqueSmiles(molecule);
+        CappedMonomerInfo info = candidates.get(canSmi);
+        if (null == info) {
             throw new StructureException("Unknown amino acid structure: " + canSmi);
         }
+
+        String cxSmi = StructureParser.getUniqueExtendedSMILES(molecule);
+        String monomerID = info.getMonomerID();
+        Map<String, String> rgroupMap = getRgroupMap(cxSmi, info.getCxsmiles());
         return new AminoAcidInfo(monomerID, rgroupMap);
     }
 
@@ -383,7 +686,7 @@ public class PeptideStructureParser {
             HashMap<String, String> reverseMap = new HashMap<String, String>();
             TreeMap<Integer, String> treeMap = new TreeMap<Integer, String>();
             for (String r : rgroups) {
-                Integer i = new Integer(r.replace("R", ""));
+                Integer i = Integer.valueOf(r.replace("R", ""));
                 treeMap.put(i, r);
             }
 
@@ -486,10 +789,16 @@ public class PeptideStructureParser {
         return sb.toString();
     }
 
+    /**
+     * This method breaks the amide and disulfide bonds of the head fragment recursively and adds the pieces as sub fragments
+     * @param tree fragment tree, its head holds the molecule to break
+     * @deprecated molecule2notation cleaves all bonds in one pass, use it instead of breaking and rolling up fragment trees
+     */
+    @Deprecated
     public void breakPeptideBonds(Tree<PeptideFragment> tree) {
         PeptideFragment frag = tree.getHead();
         if (frag.getId() <=0)
-            frag.setId(seedID++);
+            frag.setId(nextSeedID());
         Molecule molecule = frag.getMolecule();
         int currentLevel = frag.getLevel();
         int currentId = frag.getId();
@@ -532,11 +841,16 @@ public class PeptideStructureParser {
         }
     }
 
-
+    /**
+     * This method breaks the disulfide bonds of the head fragment recursively and adds the pieces as sub fragments
+     * @param tree fragment tree, its head holds the molecule to break
+     * @deprecated molecule2notation cleaves all bonds in one pass, use it instead of breaking and rolling up fragment trees
+     */
+    @Deprecated
     public void breakDisulfideBonds(Tree<PeptideFragment> tree) {
         PeptideFragment frag = tree.getHead();
         if (frag.getId() <=0)
-            frag.setId(seedID++);
+            frag.setId(nextSeedID());
         Molecule molecule = frag.getMolecule();
         int currentLevel = frag.getLevel();
         int currentId = frag.getId();
@@ -571,10 +885,16 @@ public class PeptideStructureParser {
         }
     }
 
+    /**
+     * This method breaks the amide bonds of the head fragment recursively and adds the pieces as sub fragments
+     * @param tree fragment tree, its head holds the molecule to break
+     * @deprecated molecule2notation cleaves all bonds in one pass, use it instead of breaking and rolling up fragment trees
+     */
+    @Deprecated
     public void breakAmideBonds(Tree<PeptideFragment> tree) {
         PeptideFragment frag = tree.getHead();
         if (frag.getId() <=0)
-            frag.setId(seedID++);
+            frag.setId(nextSeedID());
         Molecule molecule = frag.getMolecule();
         int currentLevel = frag.getLevel();
         int currentId = frag.getId();
@@ -609,144 +929,131 @@ public class PeptideStructureParser {
         }
     }
 
+    /**
+     * This method merges monomer IDs and connection maps from the leaves of the
+     * fragment tree up to its head. Nodes are visited in a single iterative
+     * post-order pass, so every node is merged exactly once after its sub
+     * fragments, without recursion.
+     * @param tree fragment tree generated by breakPeptideBonds
+     * @throws java.io.IOException
+     * @throws org.helm.notation.StructureException
+     * @deprecated molecule2notation cleaves all bonds in one pass, use it instead of breaking and rolling up fragment trees
+     */
+    @Deprecated
     public void rollUp(Tree<PeptideFragment> tree) throws IOException, StructureException {
-        int depth = tree.getDepth();
-        int level = 0;
-        while (level < depth) {
-            singleRollUp(tree);
-            level++;
+        for (Tree<PeptideFragment> node : tree.getPostOrderList()) {
+            rollUpNode(node);
         }
     }
 
-    public void singleRollUp(Tree<PeptideFragment> tree) throws IOException, StructureException {
+    private void rollUpNode(Tree<PeptideFragment> tree) throws IOException, StructureException {
         PeptideFragment frag = tree.getHead();
-        Molecule mol = frag.getMolecule();
         List<List<String>> monomerIDsList = frag.getMonomerIDsList();
+        if (null != monomerIDsList && !monomerIDsList.isEmpty()) {
+            return;
+        }
 
-        if (null == monomerIDsList || monomerIDsList.isEmpty()) {
-            if (null != mol && !mol.isEmpty()) {
-                generateAminoAcidIDInfo(frag);
-            } else {
-                Collection<Tree<PeptideFragment>> subtrees = tree.getSubTrees();
-                if (subtrees.size() == 1) {
-                    Tree<PeptideFragment> subtree1 = subtrees.iterator().next();
-                    PeptideFragment frag1 = subtree1.getHead();
-                    List<List<String>> monomerIDsList1 = frag1.getMonomerIDsList();
-                    List<List<Map<String, String>>> connectionMapList1 = frag1.getConnectionMapsList();
-
-                    if (null != monomerIDsList1 && !monomerIDsList1.isEmpty()) {
-                        frag.setMonomerIDsList(monomerIDsList1);
-                        frag.setConnectionMapList(connectionMapList1);
-
-//                        System.out.println("ID: " + frag.getId());
-//                        System.out.println("Level: " + frag.getLevel());
-//                        System.out.println("Monomer IDs: " + frag.getMonomerIDsList().size());
-//                        System.out.println("Connection Maps: " + frag.getConnectionMapsList().size());
-                    } else {
-                        singleRollUp(subtree1);
-                    }
+        Molecule mol = frag.getMolecule();
+        if (null != mol && !mol.isEmpty()) {
+            generateAminoAcidIDInfo(frag);
+            return;
+        }
 
+        Collection<Tree<PeptideFragment>> subtrees = tree.getSubTrees();
+        if (subtrees.isEmpty()) {
+            return;
+        }
 
-                } else {
-                    int parentFragmentID = frag.getId();
-                    Iterator<Tree<PeptideFragment>> iterator = subtrees.iterator();
-                    Tree<PeptideFragment> subtree1 = iterator.next();
-                    PeptideFragment frag1 = subtree1.getHead();
-                    List<List<String>> monomerIDsList1 = frag1.getMonomerIDsList();
-                    List<List<Map<String, String>>> connectionMapList1 = frag1.getConnectionMapsList();
-
-                    Tree<PeptideFragment> subtree2 = iterator.next();
-                    PeptideFragment frag2 = subtree2.getHead();
-                    List<List<String>> monomerIDsList2 = frag2.getMonomerIDsList();
-                    List<List<Map<String, String>>> connectionMapList2 = frag2.getConnectionMapsList();
-
-                    if (null != monomerIDsList1 && !monomerIDsList1.isEmpty()) {
-                        if (null != monomerIDsList2 && !monomerIDsList2.isEmpty()) {
-                            ConnectionInfo ci1 = getConnectionInfo(parentFragmentID, monomerIDsList1, connectionMapList1);
-                            ConnectionInfo ci2 = getConnectionInfo(parentFragmentID, monomerIDsList2, connectionMapList2);
-                            List<List<String>> parentMonomerIDsList = new ArrayList<List<String>>();
-                            List<List<Map<String, String>>> parentConnectionMapsList = new ArrayList<List<Map<String, String>>>();
-
-                            if (("R2".equals(ci1.getRgroup()) && "R1".equals(ci2.getRgroup()))
-                                    || ("R2".equals(ci2.getRgroup()) && "R1".equals(ci1.getRgroup()))) {
-                                boolean keepOrder = true;
-                                if ("R2".equals(ci2.getRgroup()) && "R1".equals(ci1.getRgroup())) {
-                                    keepOrder = false;
-                                }
-
-                                int listIndex1 = ci1.getListIndex();
-                                List<String> monomerIDs1 = null;
-                                List<Map<String, String>> connectionMaps1 = null;
-                                for (int i = 0; i < monomerIDsList1.size(); i++) {
-                                    if (i == listIndex1) {
-                                        monomerIDs1 = monomerIDsList1.get(i);
-                                        connectionMaps1 = connectionMapList1.get(i);
-                                    } else {
-                                        parentMonomerIDsList.add(monomerIDsList1.get(i));
-                                        parentConnectionMapsList.add(connectionMapList1.get(i));
-                                    }
-                                }
-                                connectionMaps1.get(ci1.getMonomerIndex()).remove("R" + parentFragmentID);
-
-                                int listIndex2 = ci2.getListIndex();
-                                List<String> monomerIDs2 = null;
-                                List<Map<String, String>> connectionMaps2 = null;
-                                for (int i = 0; i < monomerIDsList2.size(); i++) {
-                                    if (i == listIndex2) {
-                                        monomerIDs2 = monomerIDsList2.get(i);
-                                        connectionMaps2 = connectionMapList2.get(i);
-                                    } else {
-                                        parentMonomerIDsList.add(monomerIDsList2.get(i));
-                                        parentConnectionMapsList.add(connectionMapList2.get(i));
-                                    }
-                                }
-                                connectionMaps2.get(ci2.getMonomerIndex()).remove("R" + parentFragmentID);
-
-                                List<String> newMonomerIDs = new ArrayList<String>();
-                                if (keepOrder) {
-                                    newMonomerIDs.addAll(monomerIDs1);
-                                    newMonomerIDs.addAll(monomerIDs2);
-                                } else {
-                                    newMonomerIDs.addAll(monomerIDs2);
-                                    newMonomerIDs.addAll(monomerIDs1);
-                                }
-                                parentMonomerIDsList.add(newMonomerIDs);
-
-                                List<Map<String, String>> newConnectionMaps = new ArrayList<Map<String, String>>();
-                                if (keepOrder) {
-                                    newConnectionMaps.addAll(connectionMaps1);
-                                    newConnectionMaps.addAll(connectionMaps2);
-                                } else {
-                                    newConnectionMaps.addAll(connectionMaps2);
-                                    newConnectionMaps.addAll(connectionMaps1);
-                                }
-                                parentConnectionMapsList.add(newConnectionMaps);
-
-                            } else {
-                                parentMonomerIDsList.addAll(monomerIDsList1);
-                                parentMonomerIDsList.addAll(monomerIDsList2);
-
-                                parentConnectionMapsList.addAll(connectionMapList1);
-                                parentConnectionMapsList.addAll(connectionMapList2);
-                            }
-                            frag.setMonomerIDsList(parentMonomerIDsList);
-                            frag.setConnectionMapList(parentConnectionMapsList);
-//                            System.out.println("ID: " + frag.getId());
-//                            System.out.println("Level: " + frag.getLevel());
-//                            System.out.println("Monomer IDs: " + frag.getMonomerIDsList().size());
-//                            System.out.println("Connection Maps: " + frag.getConnectionMapsList().size());
+        if (subtrees.size() == 1) {
+            PeptideFragment frag1 = subtrees.iterator().next().getHead();
+            frag.setMonomerIDsList(frag1.getMonomerIDsList());
+            frag.setConnectionMapList(frag1.getConnectionMapsList());
+        } else {
+            int parentFragmentID = frag.getId();
+            Iterator<Tree<PeptideFragment>> iterator = subtrees.iterator();
+            Tree<PeptideFragment> subtree1 = iterator.next();
+            PeptideFragment frag1 = subtree1.getHead();
+            List<List<String>> monomerIDsList1 = frag1.getMonomerIDsList();
+            List<List<Map<String, String>>> connectionMapList1 = frag1.getConnectionMapsList();
+
+            Tree<PeptideFragment> subtree2 = iterator.next();
+            PeptideFragment frag2 = subtree2.getHead();
+            List<List<String>> monomerIDsList2 = frag2.getMonomerIDsList();
+            List<List<Map<String, String>>> connectionMapList2 = frag2.getConnectionMapsList();
+
+            if (null == monomerIDsList1 || monomerIDsList1.isEmpty() || null == monomerIDsList2 || monomerIDsList2.isEmpty()) {
+                throw new StructureException("Fragment " + parentFragmentID + " has sub fragments without monomer IDs");
+            }
 
-                        } else {
-                            singleRollUp(subtree2);
-                        }
+            ConnectionInfo ci1 = getConnectionInfo(parentFragmentID, monomerIDsList1, connectionMapList1);
+            ConnectionInfo ci2 = getConnectionInfo(parentFragmentID, monomerIDsList2, connectionMapList2);
+            List<List<String>> parentMonomerIDsList = new ArrayList<List<String>>();
+            List<List<Map<String, String>>> parentConnectionMapsList = new ArrayList<List<Map<String, String>>>();
+
+            if (("R2".equals(ci1.getRgroup()) && "R1".equals(ci2.getRgroup()))
+                    || ("R2".equals(ci2.getRgroup()) && "R1".equals(ci1.getRgroup()))) {
+                boolean keepOrder = true;
+                if ("R2".equals(ci2.getRgroup()) && "R1".equals(ci1.getRgroup())) {
+                    keepOrder = false;
+                }
+
+                int listIndex1 = ci1.getListIndex();
+                List<String> monomerIDs1 = null;
+                List<Map<String, String>> connectionMaps1 = null;
+                for (int i = 0; i < monomerIDsList1.size(); i++) {
+                    if (i == listIndex1) {
+                        monomerIDs1 = monomerIDsList1.get(i);
+                        connectionMaps1 = connectionMapList1.get(i);
                     } else {
-                        singleRollUp(subtree1);
-                        if (null == monomerIDsList2 || monomerIDsList2.isEmpty()) {
-                            singleRollUp(subtree2);
-                        }
+                        parentMonomerIDsList.add(monomerIDsList1.get(i));
+                        parentConnectionMapsList.add(connectionMapList1.get(i));
+                    }
+                }
+                connectionMaps1.get(ci1.getMonomerIndex()).remove("R" + parentFragmentID);
+
+                int listIndex2 = ci2.getListIndex();
+                List<String> monomerIDs2 = null;
+                List<Map<String, String>> connectionMaps2 = null;
+                for (int i = 0; i < monomerIDsList2.size(); i++) {
+                    if (i == listIndex2) {
+                        monomerIDs2 = monomerIDsList2.get(i);
+                        connectionMaps2 = connectionMapList2.get(i);
+                    } else {
+                        parentMonomerIDsList.add(monomerIDsList2.get(i));
+                        parentConnectionMapsList.add(connectionMapList2.get(i));
                     }
                 }
+                connectionMaps2.get(ci2.getMonomerIndex()).remove("R" + parentFragmentID);
+
+                List<String> newMonomerIDs = new ArrayList<String>();
+                if (keepOrder) {
+                    newMonomerIDs.addAll(monomerIDs1);
+                    newMonomerIDs.addAll(monomerIDs2);
+                } else {
+                    newMonomerIDs.addAll(monomerIDs2);
+                    newMonomerIDs.addAll(monomerIDs1);
+                }
+                parentMonomerIDsList.add(newMonomerIDs);
+
+                List<Map<String, String>> newConnectionMaps = new ArrayList<Map<String, String>>();
+                if (keepOrder) {
+                    newConnectionMaps.addAll(connectionMaps1);
+                    newConnectionMaps.addAll(connectionMaps2);
+                } else {
+                    newConnectionMaps.addAll(connectionMaps2);
+                    newConnectionMaps.addAll(connectionMaps1);
+                }
+                parentConnectionMapsList.add(newConnectionMaps);
+
+            } else {
+                parentMonomerIDsList.addAll(monomerIDsList1);
+                parentMonomerIDsList.addAll(monomerIDsList2);
+
+                parentConnectionMapsList.addAll(connectionMapList1);
+                parentConnectionMapsList.addAll(connectionMapList2);
             }
+            frag.setMonomerIDsList(parentMonomerIDsList);
+            frag.setConnectionMapList(parentConnectionMapsList);
         }
     }
 
@@ -788,7 +1095,7 @@ public class PeptideStructureParser {
         List<List<Map<String, String>>> connectionMapsList = frag.getConnectionMapsList();
         if (!mol.isEmpty() && null == monomerIDsList && null == connectionMapsList) {
             //is leaf, should be able to lookup ID
-            AminoAcidInfo mi = getAminoAcidInfo(mol);
+            AminoAcidInfo mi = getAminoAcidInfo(mol, getInvariantMap());
             String monomerID = mi.getMonomerID();
             Map<String, String> rgroupMap = mi.getRgroupMap();
 
@@ -990,4 +1297,16 @@ public class PeptideStructureParser {
         }
         return false;
     }
+
+    private static class LibraryTable {
+
+        //weak, so that the table does not keep a replaced library alive
+        private final WeakReference<MonomerFactory> factory;
+        private final Map<String, Map<String, CappedMonomerInfo>> invariantMap;
+
+        LibraryTable(MonomerFactory factory, Map<String, Map<String, CappedMonomerInfo>> invariantMap) {
+            this.factory = new WeakReference<MonomerFactory>(factory);
+            this.invariantMap = invariantMap;
+        }
+    }
 }
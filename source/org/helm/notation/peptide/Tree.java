@@ -17,6 +17,7 @@ package org.helm.notation.peptide;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -102,26 +103,44 @@ public class Tree<T> {
     }
 
     public int getDepth() {
-        List<Integer> steps = new ArrayList<Integer>();
-        walk(this, steps, 1);
         int depth = 1;
-        for (Integer i : steps) {
-            if (i.intValue() > depth) {
-                depth = i.intValue();
+        List<Tree<T>> trees = new ArrayList<Tree<T>>();
+        List<Integer> levels = new ArrayList<Integer>();
+        trees.add(this);
+        levels.add(1);
+        while (!trees.isEmpty()) {
+            Tree<T> tree = trees.remove(trees.size() - 1);
+            int level = levels.remove(levels.size() - 1).intValue();
+            if (level > depth) {
+                depth = level;
+            }
+            for (Tree<T> subtree : tree.leafs) {
+                trees.add(subtree);
+                levels.add(level + 1);
             }
         }
         return depth;
     }
 
-    private void walk(Tree<T> tree, List<Integer> steps, int level) {
-        Collection<Tree<T>> subtrees = tree.getSubTrees();
-        steps.add(level);
-        if (!subtrees.isEmpty()) {
-            int nextLevel = level + 1;
-            for (Tree<T> subtree : subtrees) {
-                walk(subtree, steps, nextLevel);
+    /**
+     * Returns all nodes of this tree in post-order, every sub tree comes before
+     * its parent. The traversal is iterative, deep trees do not grow the call stack.
+     * @return list of trees, this tree is the last element
+     */
+    public List<Tree<T>> getPostOrderList() {
+        List<Tree<T>> preOrder = new ArrayList<Tree<T>>();
+        List<Tree<T>> stack = new ArrayList<Tree<T>>();
+        stack.add(this);
+        while (!stack.isEmpty()) {
+            Tree<T> tree = stack.remove(stack.size() - 1);
+            preOrder.add(tree);
+            for (Tree<T> subtree : tree.leafs) {
+                stack.add(subtree);
             }
         }
+        //reversed (node, last child, ..., first child) order puts children before parents
+        Collections.reverse(preOrder);
+        return preOrder;
     }
 
     @Override
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * This class keeps the resume point of a batch conversion in a properties file next to the output file.
+ * A checkpoint is only written after the output it refers to is flushed, and is replaced through a temporary file so that a crash never leaves it half written.
+ */
+public class BatchCheckpoint {
+
+    public static final String CHECKPOINT_FILE_EXTENSION = ".checkpoint";
+    private static final String OPTION_KEY = "option";
+    private static final String FORMAT_KEY = "format";
+    private static final String INPUT_PATH_KEY = "input.path";
+    private static final String INPUT_LENGTH_KEY = "input.length";
+    private static final String INPUT_OFFSET_KEY = "input.offset";
+    private static final String OUTPUT_OFFSET_KEY = "output.offset";
+    private static final String RECORD_COUNT_KEY = "record.count";
+    private File file;
+    private String option;
+    private String format;
+    private String inputPath;
+    private long inputLength;
+    private long inputOffset;
+    private long outputOffset;
+    private long recordCount;
+
+    /**
+     * @param outputFile output file of the batch conversion
+     * @param option conversion option
+     * @param format output format, resumed output must be appended in the same format
+     * @param inputFile input file of the batch conversion
+     */
+    public BatchCheckpoint(File outputFile, String option, String format, File inputFile) {
+        this.file = new File(outputFile.getPath() + CHECKPOINT_FILE_EXTENSION);
+        this.option = option;
+        this.format = format;
+        this.inputPath = inputFile.getAbsolutePath();
+        this.inputLength = inputFile.length();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    public long getOutputOffset() {
+        return outputOffset;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * This method loads the saved resume point, if any
+     * @return true if a checkpoint was found, false otherwise
+     * @throws java.io.IOException if the checkpoint belongs to a different conversion
+     */
+    public boolean load() throws IOException {
+        if (!file.exists()) {
+            return false;
+        }
+
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+
+        if (!option.equals(props.getProperty(OPTION_KEY)) || !inputPath.equals(props.getProperty(INPUT_PATH_KEY)) || inputLength != getLong(props, INPUT_LENGTH_KEY)) {
+            throw new IOException("Checkpoint " + file.getPath() + " was written for a different conversion option or input file");
+        }
+        if (!format.equals(props.getProperty(FORMAT_KEY))) {
+            throw new IOException("Checkpoint " + file.getPath() + " was written for output format " + props.getProperty(FORMAT_KEY) + ", not " + format);
+        }
+        inputOffset = getLong(props, INPUT_OFFSET_KEY);
+        outputOffset = getLong(props, OUTPUT_OFFSET_KEY);
+        recordCount = getLong(props, RECORD_COUNT_KEY);
+        return true;
+    }
+
+    /**
+     * This method saves a new resume point
+     * @param inputOffset input byte offset after the last written record
+     * @param outputOffset output byte offset after the last written record
+     * @param recordCount total number of records written
+     * @throws java.io.IOException
+     */
+    public void save(long inputOffset, long outputOffset, long recordCount) throws IOException {
+        Properties props = new Properties();
+        props.setProperty(OPTION_KEY, option);
+        props.setProperty(FORMAT_KEY, format);
+        props.setProperty(INPUT_PATH_KEY, inputPath);
+        props.setProperty(INPUT_LENGTH_KEY, String.valueOf(inputLength));
+        props.setProperty(INPUT_OFFSET_KEY, String.valueOf(inputOffset));
+        props.setProperty(OUTPUT_OFFSET_KEY, String.valueOf(outputOffset));
+        props.setProperty(RECORD_COUNT_KEY, String.valueOf(recordCount));
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmpFile);
+        try {
+            props.store(out, "Batch conversion checkpoint");
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        //renameTo does not replace an existing file on all platforms
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Unable to write checkpoint " + file.getPath());
+            }
+        }
+
+        this.inputOffset = inputOffset;
+        this.outputOffset = outputOffset;
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * This method removes the checkpoint after the conversion completed
+     */
+    public void delete() {
+        file.delete();
+    }
+
+    private long getLong(Properties props, String key) throws IOException {
+        String value = props.getProperty(key);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException nfe) {
+            throw new IOException("Invalid " + key + " value [" + value + "] in checkpoint " + file.getPath());
+        }
+    }
+}
@@ -21,10 +21,15 @@
  ******************************************************************************/
 package org.helm.notation.tools;
 
-import java.io.BufferedReader;
+import org.helm.notation.NotationToolkit;
+import org.helm.notation.NucleotideFactory;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
 
 /**
  * Commonand line tools for different conversion, this is the manin class in manifest file
@@ -32,13 +37,17 @@ import java.io.FileReader;
  */
 public class CommandLine {
     public static final String[] options = {"seq2notation", "notation2property"};
+    public static final String THREADS_FLAG = "-threads";
+    public static final String QUIET_FLAG = "-quiet";
+    public static final String FORMAT_FLAG = "-format";
+    public static final String RESUME_FLAG = "-resume";
+    public static final String CHECKPOINT_FLAG = "-checkpoint";
 
     public static void main(String[] args) {
         try {
 
-            if (args.length != 3) {
-                System.out.println("Usage: java -jar NotationToolkit.jar conversion_option[seq2notation|notation2property] input_file output_file\n");
-                System.out.println("Example: java -jar NotationToolkit.jar seq2notation c:/data/seq.txt c:/data/notation.txt\n");
+            if (args.length < 3) {
+                printUsage();
                 System.exit(0);
             }
 
@@ -47,33 +56,124 @@ public class CommandLine {
                 System.exit(0);
             }
 
+            int threadCount = Runtime.getRuntime().availableProcessors();
+            boolean quiet = false;
+            String format = NotationPropertyCalculator.TSV_FORMAT;
+            boolean resume = false;
+            int checkpointInterval = LineBatchPipeline.DEFAULT_CHECKPOINT_INTERVAL;
+            for (int i = 3; i < args.length; i++) {
+                if (args[i].equalsIgnoreCase(THREADS_FLAG) && i + 1 < args.length) {
+                    i++;
+                    threadCount = parseCount(THREADS_FLAG, args[i]);
+                } else if (args[i].equalsIgnoreCase(QUIET_FLAG)) {
+                    quiet = true;
+                } else if (args[i].equalsIgnoreCase(FORMAT_FLAG) && i + 1 < args.length) {
+                    i++;
+                    format = args[i];
+                } else if (args[i].equalsIgnoreCase(RESUME_FLAG)) {
+                    resume = true;
+                } else if (args[i].equalsIgnoreCase(CHECKPOINT_FLAG) && i + 1 < args.length) {
+                    i++;
+                    checkpointInterval = parseCount(CHECKPOINT_FLAG, args[i]);
+                } else {
+                    System.out.println("Unknown flag [" + args[i] + "]");
+                    printUsage();
+                    System.exit(0);
+                }
+            }
+
+            File outfile = new File(args[2]);
+            LineBatchPipeline.LineConverter converter = null;
+            String header = null;
+            //seq2notation writes tab separated lines
+            String outputFormat = NotationPropertyCalculator.TSV_FORMAT;
+
             if (args[0].equalsIgnoreCase(options[0])) {
 
-                File infile = new File(args[1]);
-                File outfile = new File(args[2]);
+                //shared templates are loaded once, before any worker runs
+                NucleotideFactory.getInstance();
 
-                FileOutputStream outStream = new FileOutputStream(outfile);
-                BufferedReader inReader = new BufferedReader(new FileReader(infile));
-                String line = inReader.readLine();
-                int i=0;
-                while (null != line) {
-                    i++;
-                    String notation = "";
-                    try {
-                        notation = NucleotideSequenceParser.getNotation(line);
-                    } catch (Exception e) {
-                        notation = "Invalid Sequence";
+                converter = new LineBatchPipeline.LineConverter() {
+
+                    public String convert(String line) {
+                        String notation = "";
+                        try {
+                            notation = NucleotideSequenceParser.getNotation(line);
+                        } catch (Exception e) {
+                            notation = "Invalid Sequence";
+                        }
+                        return line + "\t" + notation;
+                    }
+                };
+            } else {
+
+                //shared monomers, templates and coefficient tables are loaded once, before any worker runs
+                NotationToolkit.warmUp();
+
+                NotationPropertyCalculator calculator = new NotationPropertyCalculator(format);
+                if (NotationPropertyCalculator.TSV_FORMAT.equals(calculator.getFormat())) {
+                    header = NotationPropertyCalculator.TSV_HEADER;
+                }
+                converter = calculator;
+                outputFormat = calculator.getFormat();
+            }
+
+            boolean fromStdin = LineChunkReader.STDIN.equals(args[1]);
+            if (resume && fromStdin) {
+                System.out.println("Standard input can not be resumed, " + RESUME_FLAG + " requires an input file");
+                System.exit(0);
+            }
+
+            //checkpoints are kept for file input only, standard input can not be replayed
+            BatchCheckpoint checkpoint = null;
+            boolean resumed = false;
+            if (!fromStdin) {
+                checkpoint = new BatchCheckpoint(outfile, args[0].toLowerCase(), outputFormat, new File(args[1]));
+                if (resume) {
+                    resumed = checkpoint.load();
+                    if (resumed) {
+                        System.out.println("Resuming after record " + checkpoint.getRecordCount() + " at input offset " + checkpoint.getInputOffset());
+                    } else {
+                        System.out.println("No checkpoint found at " + checkpoint.getFile().getPath() + ", starting from the beginning");
                     }
-                    String tmp = line + "\t" + notation + "\n";
-                    outStream.write(tmp.getBytes());
-                    System.out.print(""+i+"\t"+tmp);
-                    line = inReader.readLine();
                 }
+            }
 
+            //output written after the checkpoint is discarded, so no record is emitted twice
+            if (resumed) {
+                truncate(outfile, checkpoint.getOutputOffset());
+            }
+            final FileOutputStream outStream = new FileOutputStream(outfile, resumed);
+            Writer outWriter = new BufferedWriter(new OutputStreamWriter(outStream, LineChunkReader.UTF8));
+            LineChunkReader inReader = LineChunkReader.open(args[1]);
+            try {
+                if (resumed) {
+                    inReader.seek(checkpoint.getInputOffset());
+                } else if (null != header) {
+                    outWriter.write(header);
+                    outWriter.write("\n");
+                }
+
+                LineBatchPipeline pipeline = new LineBatchPipeline(converter, threadCount, quiet);
+                if (null != checkpoint) {
+                    final BatchCheckpoint batchCheckpoint = checkpoint;
+                    final long baseCount = checkpoint.getRecordCount();
+                    pipeline.setCheckpointListener(new LineBatchPipeline.CheckpointListener() {
+
+                        public void checkpoint(long inputOffset, long lineCount) throws IOException {
+                            outStream.getFD().sync();
+                            batchCheckpoint.save(inputOffset, outStream.getChannel().position(), baseCount + lineCount);
+                        }
+                    }, checkpointInterval);
+                }
+                pipeline.run(inReader, outWriter);
+            } finally {
                 inReader.close();
-                outStream.close();
-            } else {
-                System.out.println("The conversion option ["+args[0]+"] is not supported yet");
+                outWriter.close();
+            }
+
+            if (null != checkpoint) {
+                checkpoint.delete();
             }
 
         } catch (Exception e) {
@@ -81,6 +181,39 @@ public class CommandLine {
         }
     }
 
+    private static void printUsage() {
+        System.out.println("Usage: java -jar NotationToolkit.jar conversion_option[seq2notation|notation2property] input_file|- output_file [-threads n] [-quiet] [-format tsv|jsonl] [-checkpoint chunks] [-resume]\n");
+        System.out.println("Example: java -jar NotationToolkit.jar seq2notation c:/data/seq.txt c:/data/notation.txt -threads 8 -quiet");
+        System.out.println("Example: java -jar NotationToolkit.jar notation2property c:/data/notation.txt c:/data/property.jsonl -format jsonl");
+        System.out.println("Example: java -jar NotationToolkit.jar seq2notation c:/data/seq.txt c:/data/notation.txt -quiet -resume");
+        System.out.println("Input file - reads UTF-8 lines from standard input");
+        System.out.println("A checkpoint is saved to output_file.checkpoint every 100 chunks of 1000 lines, -resume continues from it\n");
+    }
+
+    //reports an invalid number with the usage text and exits
+    private static int parseCount(String flag, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+            System.out.println("Invalid number [" + value + "] for " + flag);
+            printUsage();
+            System.exit(0);
+            return 0;
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() < length) {
+                throw new IOException("Output file " + file.getPath() + " is shorter than its checkpoint");
+            }
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
     private static boolean isValidOption(String option) {
         for(String choice : options) {
             if (choice.equalsIgnoreCase(option)) {
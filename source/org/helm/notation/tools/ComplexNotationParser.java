@@ -482,9 +482,25 @@ public class ComplexNotationParser {
      * @throws org.jdom.JDOMException
      */
     public static boolean validateComplexNotation(String extendedNotation) throws NotationException, MonomerException, IOException, StructureException, JDOMException {
+        return validateComplexNotation(extendedNotation, true);
+    }
+
+    /**
+     * This methods validates the complex polymer extendendNotation, structure validation is optional.
+     * Without structure validation, node IDs, monomer IDs, monomer positions and R groups used by edges are checked against monomer attachment lists, no molecule is built
+     * @param extendedNotation
+     * @param includeStructure true to build polymer structures during validation
+     * @return true or false
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.MonomerException
+     * @throws java.io.IOException
+     * @throws org.helm.notation.StructureException
+     * @throws org.jdom.JDOMException
+     */
+    public static boolean validateComplexNotation(String extendedNotation, boolean includeStructure) throws NotationException, MonomerException, IOException, StructureException, JDOMException {
         validateNotationFormat(extendedNotation);
         ComplexPolymer cp = parse(extendedNotation);
-        validateComplexPolymer(cp);
+        validateComplexPolymer(cp, includeStructure);
         return true;
     }
 
@@ -499,6 +515,21 @@ public class ComplexNotationParser {
      * @throws org.jdom.JDOMException
      */
     public static boolean validateComplexPolymer(ComplexPolymer complexPolymer) throws NotationException, IOException, MonomerException, StructureException, JDOMException {
+        return validateComplexPolymer(complexPolymer, true);
+    }
+
+    /**
+     * This methods checks Nodes and Edges matches, and checks validity of each node label, structure validation is optional
+     * @param complexPolymer
+     * @param includeStructure true to build polymer structures during validation
+     * @return true or false
+     * @throws org.helm.notation.NotationException
+     * @throws java.io.IOException
+     * @throws org.helm.notation.MonomerException
+     * @throws org.helm.notation.StructureException
+     * @throws org.jdom.JDOMException
+     */
+    public static boolean validateComplexPolymer(ComplexPolymer complexPolymer, boolean includeStructure) throws NotationException, IOException, MonomerException, StructureException, JDOMException {
         List<PolymerNode> nodeList = complexPolymer.getPolymerNodeList();
         List<PolymerEdge> edgeList = complexPolymer.getPolymerEdgeList();
         List<PolymerEdge> bpList = complexPolymer.getBasePairList();
@@ -518,14 +549,26 @@ public class ComplexNotationParser {
         }
 
         //this call also validates simple polymers
-        Map<String, RgroupStructure> polymerNodeStructureMap = getPolymerNodeStructureMap(nodeList);
+        Map<String, Set<String>> polymerNodeConnectionMap = null;
+        if (includeStructure) {
+            polymerNodeConnectionMap = new HashMap<String, Set<String>>();
+            Map<String, RgroupStructure> polymerNodeStructureMap = getPolymerNodeStructureMap(nodeList);
+            for (Map.Entry<String, RgroupStructure> entry : polymerNodeStructureMap.entrySet()) {
+                Map<String, MolAtom> rMap = entry.getValue().getRgroupMap();
+                if (null != rMap) {
+                    polymerNodeConnectionMap.put(entry.getKey(), rMap.keySet());
+                }
+            }
+        } else {
+            polymerNodeConnectionMap = getPolymerNodeConnectionMap(nodeList);
+        }
 
         if (null != edgeList) {
             for (PolymerEdge edge : edgeList) {
                 if (edge.getEdgeType() == PolymerEdge.STANDARD_EDGE) {
-                    validateStandardEdge(edge, nodeMap, polymerNodeStructureMap);
+                    validateStandardEdge(edge, nodeMap, polymerNodeConnectionMap);
                 } else if (edge.getEdgeType() == PolymerEdge.GENERIC_EDGE) {
-                    validateGenericEdge(edge, nodeMap, polymerNodeStructureMap);
+                    validateGenericEdge(edge, nodeMap, polymerNodeConnectionMap);
                 } else if (edge.getEdgeType() == PolymerEdge.PAIR_EDGE) {
                     validatePairEdge(edge, nodeMap);
                 } else {
@@ -554,16 +597,16 @@ public class ComplexNotationParser {
         return true;
     }
 
-    private static void validateStandardEdge(PolymerEdge edge, Map<String, String> nodeMap, Map<String, RgroupStructure> polymerNodeStructureMap) throws NotationException {
+    private static void validateStandardEdge(PolymerEdge edge, Map<String, String> nodeMap, Map<String, Set<String>> polymerNodeConnectionMap) throws NotationException {
         //source node check        
         String node = edge.getSourceNode();
         String connection = edge.getSourceConnection();
-        validateStandardAttachment(node, connection, nodeMap, polymerNodeStructureMap);
+        validateStandardAttachment(node, connection, nodeMap, polymerNodeConnectionMap);
 
         //target node check
         node = edge.getTargetNode();
         connection = edge.getTargetConnection();
-        validateStandardAttachment(node, connection, nodeMap, polymerNodeStructureMap);
+        validateStandardAttachment(node, connection, nodeMap, polymerNodeConnectionMap);
     }
 
     private static void validatePairEdge(PolymerEdge edge, Map<String, String> nodeMap) throws NotationException {
@@ -579,13 +622,13 @@ public class ComplexNotationParser {
         }
     }
 
-    private static void validateGenericEdge(PolymerEdge edge, Map<String, String> nodeMap, Map<String, RgroupStructure> polymerNodeStructureMap) throws NotationException {
+    private static void validateGenericEdge(PolymerEdge edge, Map<String, String> nodeMap, Map<String, Set<String>> polymerNodeConnectionMap) throws NotationException {
         //source node check  
         int attType = edge.getSourceAttachmentType();
         if (attType == PolymerEdge.STANDARD_EDGE_ATTACHMENT) {
             String node = edge.getSourceNode();
             String connection = edge.getSourceConnection();
-            validateStandardAttachment(node, connection, nodeMap, polymerNodeStructureMap);
+            validateStandardAttachment(node, connection, nodeMap, polymerNodeConnectionMap);
         } else if (attType == PolymerEdge.GENERIC_EDGE_ATTACHMENT) {
             String[] nodes = edge.getSourceNodes();
             validateGenericAttachment(nodes, nodeMap);
@@ -596,26 +639,21 @@ public class ComplexNotationParser {
         if (attType == PolymerEdge.STANDARD_EDGE_ATTACHMENT) {
             String node = edge.getTargetNode();
             String connection = edge.getTargetConnection();
-            validateStandardAttachment(node, connection, nodeMap, polymerNodeStructureMap);
+            validateStandardAttachment(node, connection, nodeMap, polymerNodeConnectionMap);
         } else if (attType == PolymerEdge.GENERIC_EDGE_ATTACHMENT) {
             String[] nodes = edge.getTargetNodes();
             validateGenericAttachment(nodes, nodeMap);
         }
     }
 
-    private static void validateStandardAttachment(String node, String connection, Map<String, String> nodeMap, Map<String, RgroupStructure> polymerNodeStructureMap) throws NotationException {
-        RgroupStructure rstructure = polymerNodeStructureMap.get(node);
+    private static void validateStandardAttachment(String node, String connection, Map<String, String> nodeMap, Map<String, Set<String>> polymerNodeConnectionMap) throws NotationException {
+        Set<String> connections = polymerNodeConnectionMap.get(node);
 
         if (!(nodeMap.containsKey(node))) {
             throw new NotationException("Polymer edge contains unknown polymer node ID");
         }
 
-        if (null == rstructure) {
-            throw new NotationException("Polymer edge contains polymer node without connection point");
-        }
-
-        Map<String, MolAtom> rMap = rstructure.getRgroupMap();
-        if (null == rMap || !rMap.containsKey(connection)) {
+        if (null == connections || !connections.contains(connection)) {
             throw new NotationException("Polymer edge contains polymer node without connection point");
         }
     }
@@ -830,7 +868,7 @@ public class ComplexNotationParser {
      * @param nodeID
      * @throws org.helm.notation.NotationException
      */
-    private static boolean validateNodeID(String nodeID) throws NotationException {
+    protected static boolean validateNodeID(String nodeID) throws NotationException {
         char[] chars = nodeID.toCharArray();
         if (!(String.valueOf(chars[0]).matches("[A-Za-z]"))) {
             throw new NotationException(INVALID_NODE_ID + ": " + nodeID);
@@ -959,113 +997,130 @@ public class ComplexNotationParser {
             String reverseRna2Seq = NucleotideSequenceParser.getReverseSequence(rna2Seq);
 
             String bpString = getAllBasePairString(complexNotation);
-            if (null == bpString || bpString.length() == 0) {
-                return new String[]{rna1Seq, rna2Seq};
-            } else {
-                Map<Integer, Integer> monomerPositionMap = getSirnaMonomerPositionMap(bpString);
-                Map<Integer, Integer> seqPositionMap = new HashMap<Integer, Integer>();
-                Set<Integer> monomerSet = monomerPositionMap.keySet();
-                for (Integer key : monomerSet) {
-                    Integer value = monomerPositionMap.get(key);
-                    Integer seqKey = new Integer(key.intValue() / 3 + 1);
-                    Integer seqValue = new Integer(value.intValue() / 3 + 1);
-                    seqPositionMap.put(seqKey, seqValue);
-                }
+            return formatSirnaSequences(rna1Seq, rna2Seq, reverseRna2Seq, rna1Annotation, rna2Annotation, bpString, paddingChar, basePairChar);
 
-                Set<Integer> seqSet = seqPositionMap.keySet();
-                List<Integer> seqList = new ArrayList<Integer>();
-                for (Integer key : seqSet) {
-                    seqList.add(key);
-                }
-                Collections.sort(seqList);
+        } else {
+            throw new NotationException("Structure contains more than two RNA sequences");
+        }
 
-                int rna1First = seqList.get(0).intValue();
-                int rna2Last = seqPositionMap.get(seqList.get(0)).intValue();
-                int rna1Last = seqList.get(seqList.size() - 1).intValue();
-                int rna2First = seqPositionMap.get(seqList.get(seqList.size() - 1)).intValue();
+    }
 
-                if ((rna1Last - rna1First) != (rna2Last - rna2First)) {
-                    throw new NotationException("siRNA matching lengths are different");
-                }
+    /**
+     * generates formated siRNA sequence from strand sequences and base pair string
+     * @param rna1Seq natural analog sequence of RNA1
+     * @param rna2Seq natural analog sequence of RNA2
+     * @param reverseRna2Seq RNA2 sequence in reverse direction
+     * @param rna1Annotation annotation of RNA1, such as ss
+     * @param rna2Annotation annotation of RNA2, such as as
+     * @param bpString base pair string, could be empty
+     * @param paddingChar
+     * @param basePairChar
+     * @return string array of formated nucleotide sequence
+     * @throws org.helm.notation.NotationException
+     */
+    static String[] formatSirnaSequences(String rna1Seq, String rna2Seq, String reverseRna2Seq, String rna1Annotation, String rna2Annotation, String bpString, String paddingChar, String basePairChar) throws NotationException {
+        if (null == bpString || bpString.length() == 0) {
+            return new String[]{rna1Seq, rna2Seq};
+        } else {
+            Map<Integer, Integer> monomerPositionMap = getSirnaMonomerPositionMap(bpString);
+            Map<Integer, Integer> seqPositionMap = new HashMap<Integer, Integer>();
+            Set<Integer> monomerSet = monomerPositionMap.keySet();
+            for (Integer key : monomerSet) {
+                Integer value = monomerPositionMap.get(key);
+                Integer seqKey = new Integer(key.intValue() / 3 + 1);
+                Integer seqValue = new Integer(value.intValue() / 3 + 1);
+                seqPositionMap.put(seqKey, seqValue);
+            }
 
-                int rna1LeftOverhang = rna1First - 1;
-                int rna1RightOverhang = rna1Seq.length() - rna1Last;
-                int rna2LeftOverhang = rna2Seq.length() - rna2Last;
-                int rna2RightOverhang = rna2First - 1;
-                StringBuffer[] sbs = new StringBuffer[3];
-                for (int i = 0; i < sbs.length; i++) {
-                    sbs[i] = new StringBuffer();
-                }
+            Set<Integer> seqSet = seqPositionMap.keySet();
+            List<Integer> seqList = new ArrayList<Integer>();
+            for (Integer key : seqSet) {
+                seqList.add(key);
+            }
+            Collections.sort(seqList);
 
-                if (rna1LeftOverhang >= rna2LeftOverhang) {
-                    sbs[0].append(rna1Seq);
+            int rna1First = seqList.get(0).intValue();
+            int rna2Last = seqPositionMap.get(seqList.get(0)).intValue();
+            int rna1Last = seqList.get(seqList.size() - 1).intValue();
+            int rna2First = seqPositionMap.get(seqList.get(seqList.size() - 1)).intValue();
 
-                    for (int i = 0; i < rna1LeftOverhang; i++) {
-                        sbs[1].append(paddingChar);
-                    }
-                    for (int i = rna1First; i < (rna1Last + 1); i++) {
-                        Integer in = new Integer(i);
-                        if (seqPositionMap.containsKey(in)) {
-                            sbs[1].append(basePairChar);
-                        } else {
-                            sbs[1].append(paddingChar);
-                        }
-                    }
+            if ((rna1Last - rna1First) != (rna2Last - rna2First)) {
+                throw new NotationException("siRNA matching lengths are different");
+            }
 
-                    for (int i = 0; i < rna1LeftOverhang - rna2LeftOverhang; i++) {
-                        sbs[2].append(paddingChar);
-                    }
-                    sbs[2].append(reverseRna2Seq);
-                } else {
-                    for (int i = 0; i < rna2LeftOverhang - rna1LeftOverhang; i++) {
-                        sbs[0].append(paddingChar);
-                    }
-                    sbs[0].append(rna1Seq);
+            int rna1LeftOverhang = rna1First - 1;
+            int rna1RightOverhang = rna1Seq.length() - rna1Last;
+            int rna2LeftOverhang = rna2Seq.length() - rna2Last;
+            int rna2RightOverhang = rna2First - 1;
+            StringBuffer[] sbs = new StringBuffer[3];
+            for (int i = 0; i < sbs.length; i++) {
+                sbs[i] = new StringBuffer();
+            }
+
+            if (rna1LeftOverhang >= rna2LeftOverhang) {
+                sbs[0].append(rna1Seq);
 
-                    for (int i = 0; i < rna2LeftOverhang; i++) {
+                for (int i = 0; i < rna1LeftOverhang; i++) {
+                    sbs[1].append(paddingChar);
+                }
+                for (int i = rna1First; i < (rna1Last + 1); i++) {
+                    Integer in = new Integer(i);
+                    if (seqPositionMap.containsKey(in)) {
+                        sbs[1].append(basePairChar);
+                    } else {
                         sbs[1].append(paddingChar);
                     }
-                    for (int i = rna1First; i < (rna1Last + 1); i++) {
-                        Integer in = new Integer(i);
-                        if (seqPositionMap.containsKey(in)) {
-                            sbs[1].append(basePairChar);
-                        } else {
-                            sbs[1].append(paddingChar);
-                        }
-                    }
+                }
 
-                    sbs[2].append(reverseRna2Seq);
+                for (int i = 0; i < rna1LeftOverhang - rna2LeftOverhang; i++) {
+                    sbs[2].append(paddingChar);
                 }
+                sbs[2].append(reverseRna2Seq);
+            } else {
+                for (int i = 0; i < rna2LeftOverhang - rna1LeftOverhang; i++) {
+                    sbs[0].append(paddingChar);
+                }
+                sbs[0].append(rna1Seq);
 
-                if (rna1RightOverhang >= rna2RightOverhang) {
-                    for (int i = 0; i < rna1RightOverhang; i++) {
+                for (int i = 0; i < rna2LeftOverhang; i++) {
+                    sbs[1].append(paddingChar);
+                }
+                for (int i = rna1First; i < (rna1Last + 1); i++) {
+                    Integer in = new Integer(i);
+                    if (seqPositionMap.containsKey(in)) {
+                        sbs[1].append(basePairChar);
+                    } else {
                         sbs[1].append(paddingChar);
                     }
+                }
 
-                    for (int i = 0; i < rna1RightOverhang - rna2RightOverhang; i++) {
-                        sbs[2].append(paddingChar);
-                    }
-                } else {
-                    for (int i = 0; i < rna2RightOverhang - rna1RightOverhang; i++) {
-                        sbs[0].append(paddingChar);
-                    }
+                sbs[2].append(reverseRna2Seq);
+            }
 
-                    for (int i = 0; i < rna2RightOverhang - rna1RightOverhang; i++) {
-                        sbs[1].append(paddingChar);
-                    }
+            if (rna1RightOverhang >= rna2RightOverhang) {
+                for (int i = 0; i < rna1RightOverhang; i++) {
+                    sbs[1].append(paddingChar);
                 }
 
-                if ((rna1Annotation != null && rna1Annotation.equalsIgnoreCase("AS")) || (rna2Annotation != null && rna2Annotation.equalsIgnoreCase("SS"))) {
-                    return new String[]{reverseString(sbs[2].toString()), reverseString(sbs[1].toString()), reverseString(sbs[0].toString())};
-                } else {
-                    return new String[]{sbs[0].toString(), sbs[1].toString(), sbs[2].toString()};
+                for (int i = 0; i < rna1RightOverhang - rna2RightOverhang; i++) {
+                    sbs[2].append(paddingChar);
+                }
+            } else {
+                for (int i = 0; i < rna2RightOverhang - rna1RightOverhang; i++) {
+                    sbs[0].append(paddingChar);
+                }
+
+                for (int i = 0; i < rna2RightOverhang - rna1RightOverhang; i++) {
+                    sbs[1].append(paddingChar);
                 }
             }
 
-        } else {
-            throw new NotationException("Structure contains more than two RNA sequences");
+            if ((rna1Annotation != null && rna1Annotation.equalsIgnoreCase("AS")) || (rna2Annotation != null && rna2Annotation.equalsIgnoreCase("SS"))) {
+                return new String[]{reverseString(sbs[2].toString()), reverseString(sbs[1].toString()), reverseString(sbs[0].toString())};
+            } else {
+                return new String[]{sbs[0].toString(), sbs[1].toString(), sbs[2].toString()};
+            }
         }
-
     }
 
     private static Map<Integer, Integer> getSirnaMonomerPositionMap(String basePairString) throws NotationException {
@@ -1161,7 +1216,7 @@ public class ComplexNotationParser {
         //deal with ad hoc CHEM monomer here, use smiles instead of temp ID
         for (PolymerNode node : nodeList) {
             if (node.getType().equals(Monomer.CHEMICAL_POLYMER_TYPE) && node.getLabel().startsWith(SimpleNotationParser.AD_HOC_CHEM_MONOMER_ID_PREFIX)) {
-                Monomer m = MonomerFactory.getInstance().getMonomerDB().get(Monomer.CHEMICAL_POLYMER_TYPE).get(node.getLabel());
+                Monomer m = SimpleNotationParser.getMonomer(node.getLabel(), Monomer.CHEMICAL_POLYMER_TYPE);
                 String smiles = m.getCanSMILES();
                 String uniSmi = StructureParser.getUniqueExtendedSMILES(smiles);
 
@@ -1740,10 +1795,10 @@ public class ComplexNotationParser {
             ComplexNotationParser.validateComplexNotation(notation);
             return notation;
         } else {
-            Set<String> polymerTypes = MonomerFactory.getInstance().getMonomerDB().keySet();
+            //only the candidate polymer types get the full validation
+            List<String> polymerTypes = getCandidatePolymerTypes(notation);
             for (String polymerType : polymerTypes) {
                 try {
-                    SimpleNotationParser.validateSimpleNotation(notation, polymerType);
                     return SimpleNotationParser.getComplexNotation(notation, polymerType);
                 } catch (Exception e) {
                 }
@@ -1752,6 +1807,51 @@ public class ComplexNotationParser {
         }
     }
 
+    /**
+     * This method classifies simple polymer notation by checking its monomer IDs against the monomer IDs of each polymer type, no structure is built.
+     * Polymer types whose monomers are all known and can be connected come first, ad hoc CHEM monomer is the last resort
+     * @param notation simple polymer notation
+     * @return list of candidate polymer types in order of preference
+     * @throws org.helm.notation.MonomerException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    private static List<String> getCandidatePolymerTypes(String notation) throws MonomerException, IOException, JDOMException {
+        MonomerFactory factory = MonomerFactory.getInstance();
+        Map<String, Map<String, Monomer>> monomerDB = factory.getMonomerDB();
+
+        List<String> candidates = new ArrayList<String>();
+        boolean chemFallback = false;
+        for (String polymerType : monomerDB.keySet()) {
+            Map<String, Monomer> monomers = monomerDB.get(polymerType);
+            if (polymerType.equals(Monomer.CHEMICAL_POLYMER_TYPE)) {
+                //avoid registering notation as ad hoc CHEM monomer before other polymer types are checked
+                Monomer m = factory.getSmilesMonomerDB().get(notation);
+                if (monomers.containsKey(notation) || (null != m && polymerType.equals(m.getPolymerType()))) {
+                    candidates.add(polymerType);
+                } else {
+                    chemFallback = true;
+                }
+                continue;
+            }
+
+            try {
+                List<String> ids = SimpleNotationParser.getMonomerIDList(notation, polymerType);
+                if (ids.isEmpty() || !monomers.keySet().containsAll(ids)) {
+                    continue;
+                }
+                SimpleNotationParser.getSimplePolymerAttachmentSet(notation, polymerType);
+                candidates.add(polymerType);
+            } catch (Exception e) {
+            }
+        }
+
+        if (chemFallback) {
+            candidates.add(Monomer.CHEMICAL_POLYMER_TYPE);
+        }
+        return candidates;
+    }
+
     /**
      * Returns true if the any of the polymerNodes that are not nucleotides have
      * has a modified nucleotide.  The assertion is based on breaking the
@@ -1904,4 +2004,19 @@ public class ComplexNotationParser {
         }
         return nodeStrucMap;
     }
+
+    private static Map<String, Set<String>> getPolymerNodeConnectionMap(List<PolymerNode> nodeList) throws IOException, NotationException, MonomerException, StructureException, JDOMException {
+        Map<String, Set<String>> nodeConnectionMap = new HashMap<String, Set<String>>();
+        for (int i = 0; i < nodeList.size(); i++) {
+            PolymerNode node = nodeList.get(i);
+            String nodeId = node.getId();
+            String polymerType = PolymerNode.getPolymerType(nodeId);
+            Set<String> connections = SimpleNotationParser.getSimplePolymerAttachmentSet(node.getLabel(), polymerType);
+            if (null == connections) {
+                throw new NotationException("Polymer notation contains non-specific monomer structure");
+            }
+            nodeConnectionMap.put(nodeId, connections);
+        }
+        return nodeConnectionMap;
+    }
 }
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.tools;
+
+import org.helm.notation.MonomerException;
+import org.helm.notation.NotationContext;
+import org.helm.notation.MonomerFactory;
+import org.helm.notation.NotationException;
+import org.helm.notation.NucleotideFactory;
+import org.helm.notation.StructureException;
+import org.helm.notation.model.NotationValidationResult;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.jdom.JDOMException;
+
+/**
+ * This class validates a batch of complex notations with a pool of worker threads.
+ * Each notation gets a NotationValidationResult in input order, invalid notations do not abort the batch.
+ * Monomer and nucleotide factories are initialized once before the workers start and shared by all of them.
+ */
+public class ComplexNotationValidator {
+
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    /**
+     * This method validates all notations without structure building, using one worker thread per processor
+     * @param notations complex notations
+     * @return list of NotationValidationResult in input order
+     * @throws org.helm.notation.MonomerException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     * @throws org.helm.notation.NotationException
+     */
+    public static List<NotationValidationResult> validate(Iterable<String> notations) throws MonomerException, IOException, JDOMException, NotationException {
+        return validate(notations, Runtime.getRuntime().availableProcessors(), false);
+    }
+
+    /**
+     * This method validates all notations with a pool of worker threads
+     * @param notations complex notations
+     * @param threadCount number of worker threads
+     * @param includeStructure true to build polymer structures during validation
+     * @return list of NotationValidationResult in input order
+     * @throws org.helm.notation.MonomerException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     * @throws org.helm.notation.NotationException
+     */
+    public static List<NotationValidationResult> validate(Iterable<String> notations, int threadCount, final boolean includeStructure) throws MonomerException, IOException, JDOMException, NotationException {
+        if (threadCount < 1) {
+            threadCount = 1;
+        }
+
+        //shared lookups are loaded once, before any worker runs
+        MonomerFactory.getInstance();
+        NucleotideFactory.getInstance();
+
+        List<NotationValidationResult> results = new ArrayList<NotationValidationResult>();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        //pooled threads do not inherit the library of the caller, a reload during the job does not reach it either
+        NotationContext context = NotationContext.snapshot();
+        try {
+            List<Future<List<NotationValidationResult>>> futures = new ArrayList<Future<List<NotationValidationResult>>>();
+            Iterator<String> it = notations.iterator();
+            int index = 0;
+            while (it.hasNext()) {
+                final int startIndex = index;
+                final List<String> chunk = new ArrayList<String>(DEFAULT_CHUNK_SIZE);
+                while (it.hasNext() && chunk.size() < DEFAULT_CHUNK_SIZE) {
+                    chunk.add(it.next());
+                    index++;
+                }
+                futures.add(executor.submit(NotationContext.withContext(context, new Callable<List<NotationValidationResult>>() {
+
+                    public List<NotationValidationResult> call() {
+                        List<NotationValidationResult> l = new ArrayList<NotationValidationResult>(chunk.size());
+                        for (int i = 0; i < chunk.size(); i++) {
+                            l.add(validate(startIndex + i, chunk.get(i), includeStructure));
+                        }
+                        return l;
+                    }
+                })));
+            }
+
+            for (Future<List<NotationValidationResult>> future : futures) {
+                try {
+                    results.addAll(future.get());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new NotationException("Batch validation interrupted", ex);
+                } catch (ExecutionException ex) {
+                    throw new NotationException("Batch validation failed", ex.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * This method validates one notation and reports the outcome as result code instead of exception
+     * @param index 0 based position of the notation in the input
+     * @param notation complex notation
+     * @param includeStructure true to build polymer structures during validation
+     * @return NotationValidationResult
+     */
+    public static NotationValidationResult validate(int index, String notation, boolean includeStructure) {
+        if (null == notation || notation.trim().length() == 0) {
+            return new NotationValidationResult(index, notation, NotationValidationResult.INVALID_NOTATION, "Notation is empty");
+        }
+
+        try {
+            ComplexNotationParser.validateComplexNotation(notation.trim(), includeStructure);
+            return new NotationValidationResult(index, notation, NotationValidationResult.VALID, null);
+        } catch (NotationException ex) {
+            return new NotationValidationResult(index, notation, NotationValidationResult.INVALID_NOTATION, ex.getMessage());
+        } catch (MonomerException ex) {
+            return new NotationValidationResult(index, notation, NotationValidationResult.INVALID_MONOMER, ex.getMessage());
+        } catch (StructureException ex) {
+            return new NotationValidationResult(index, notation, NotationValidationResult.INVALID_STRUCTURE, ex.getMessage());
+        } catch (Exception ex) {
+            return new NotationValidationResult(index, notation, NotationValidationResult.PROCESSING_ERROR, ex.toString());
+        }
+    }
+}
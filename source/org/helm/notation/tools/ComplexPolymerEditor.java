@@ -0,0 +1,496 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.tools;
+
+import chemaxon.marvin.plugin.PluginException;
+
+import org.helm.notation.CalculationException;
+import org.helm.notation.MonomerException;
+import org.helm.notation.NotationConstant;
+import org.helm.notation.NotationException;
+import org.helm.notation.StructureException;
+import org.helm.notation.model.ComplexPolymer;
+import org.helm.notation.model.MoleculeInfo;
+import org.helm.notation.model.Monomer;
+import org.helm.notation.model.PolymerEdge;
+import org.helm.notation.model.PolymerNode;
+import org.helm.notation.model.RgroupStructure;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.jdom.JDOMException;
+
+/**
+ * This class edits a parsed complex polymer in place by monomer replacement.
+ * Changed monomer positions are recorded for each polymer node, and validation state, molecule info and extinction coefficient
+ * are updated incrementally: only the monomer groups (in chunks of NotationConstant.MONOMER_GROUP_COUNT_INTERVAL) and polymer nodes
+ * touched by the edits are recalculated, all other chunk results are reused.
+ * Monomer replacement keeps monomer type and attachments (see SimpleNotationParser.validateMonomerReplacement), so edges stay valid after edits.
+ */
+public class ComplexPolymerEditor {
+
+    private String restOfNotation;
+    private List<PolymerEdge> edgeList;
+    private Map<String, NodeState> nodeStateMap = new LinkedHashMap<String, NodeState>();
+    private Map<String, MoleculeInfo> capInfoMap = new HashMap<String, MoleculeInfo>();
+    private Map<String, SortedSet<Integer>> changedPositionMap = new HashMap<String, SortedSet<Integer>>();
+    private Set<String> structureDirtyNodes = new HashSet<String>();
+    private boolean structureValidated = false;
+
+    /**
+     * Parse and validate (without structure) complex notation for editing
+     * @param complexNotation
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.MonomerException
+     * @throws org.helm.notation.StructureException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    public ComplexPolymerEditor(String complexNotation) throws NotationException, MonomerException, StructureException, IOException, JDOMException {
+        ComplexNotationParser.validateNotationFormat(complexNotation);
+        ComplexPolymer cp = ComplexNotationParser.parse(complexNotation);
+        ComplexNotationParser.validateComplexPolymer(cp, false);
+
+        String allNodeString = ComplexNotationParser.getAllNodeString(complexNotation);
+        restOfNotation = complexNotation.substring(allNodeString.length());
+        edgeList = cp.getPolymerEdgeList();
+        if (null == edgeList) {
+            edgeList = new ArrayList<PolymerEdge>();
+        }
+
+        for (PolymerNode node : cp.getPolymerNodeList()) {
+            nodeStateMap.put(node.getId(), new NodeState(node));
+            structureDirtyNodes.add(node.getId());
+        }
+    }
+
+    /**
+     * replace the monomer at the given position of a polymer node
+     * @param nodeId polymer node ID, such as RNA1
+     * @param monomerNumber 1 based monomer position in the polymer node
+     * @param newMonomerID
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.MonomerException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    public void replaceMonomer(String nodeId, int monomerNumber, String newMonomerID) throws NotationException, MonomerException, IOException, JDOMException {
+        NodeState state = nodeStateMap.get(nodeId);
+        if (null == state) {
+            throw new NotationException("Unknown polymer node ID " + nodeId);
+        }
+        if (monomerNumber < 1 || monomerNumber > state.monomerIDs.size()) {
+            throw new NotationException("Monomer number " + monomerNumber + " is out of range for polymer node " + nodeId);
+        }
+
+        String existingMonomerID = state.monomerIDs.get(monomerNumber - 1);
+        if (existingMonomerID.equals(newMonomerID)) {
+            return;
+        }
+        SimpleNotationParser.validateMonomerReplacement(state.polymerType, existingMonomerID, newMonomerID);
+        setMonomer(state, monomerNumber, newMonomerID);
+    }
+
+    /**
+     * replace all existing monomers of the polymer type with new monomer, same as ComplexNotationParser.replaceMonomer()
+     * @param polymerType
+     * @param existingMonomerID
+     * @param newMonomerID
+     * @return number of replaced monomers
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.MonomerException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    public int replaceMonomer(String polymerType, String existingMonomerID, String newMonomerID) throws NotationException, MonomerException, IOException, JDOMException {
+        SimpleNotationParser.validateMonomerReplacement(polymerType, existingMonomerID, newMonomerID);
+        if (existingMonomerID.equals(newMonomerID)) {
+            return 0;
+        }
+
+        int count = 0;
+        for (NodeState state : nodeStateMap.values()) {
+            if (!state.polymerType.equals(polymerType)) {
+                continue;
+            }
+            for (int i = 0; i < state.monomerIDs.size(); i++) {
+                if (state.monomerIDs.get(i).equals(existingMonomerID)) {
+                    setMonomer(state, i + 1, newMonomerID);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void setMonomer(NodeState state, int monomerNumber, String newMonomerID) throws NotationException, MonomerException, IOException, JDOMException {
+        state.monomerIDs.set(monomerNumber - 1, newMonomerID);
+        int groupIndex = state.monomerGroupIndex[monomerNumber - 1];
+        state.updateGroupNotation(groupIndex);
+
+        int chunkIndex = groupIndex / NotationConstant.MONOMER_GROUP_COUNT_INTERVAL;
+        if (chunkIndex < state.chunkInfoList.size()) {
+            state.chunkInfoList.set(chunkIndex, null);
+        }
+        state.moleculeInfo = null;
+        state.extinctionCoefficient = null;
+        structureDirtyNodes.add(state.nodeId);
+
+        SortedSet<Integer> positions = changedPositionMap.get(state.nodeId);
+        if (null == positions) {
+            positions = new TreeSet<Integer>();
+            changedPositionMap.put(state.nodeId, positions);
+        }
+        positions.add(Integer.valueOf(monomerNumber));
+    }
+
+    /**
+     * get the changed monomer positions of polymer node since this editor was created
+     * @param nodeId
+     * @return sorted 1 based monomer positions
+     */
+    public SortedSet<Integer> getChangedPositions(String nodeId) {
+        SortedSet<Integer> positions = changedPositionMap.get(nodeId);
+        if (null == positions) {
+            return new TreeSet<Integer>();
+        }
+        return Collections.unmodifiableSortedSet(positions);
+    }
+
+    /**
+     * get the changed monomer positions of all polymer nodes since this editor was created
+     * @return map of polymer node ID to sorted 1 based monomer positions
+     */
+    public Map<String, SortedSet<Integer>> getChangedPositionMap() {
+        Map<String, SortedSet<Integer>> map = new LinkedHashMap<String, SortedSet<Integer>>();
+        for (String nodeId : nodeStateMap.keySet()) {
+            if (changedPositionMap.containsKey(nodeId)) {
+                map.put(nodeId, getChangedPositions(nodeId));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * get the complex notation reflecting all edits
+     * @return complex notation
+     */
+    public String getNotation() {
+        StringBuffer sb = new StringBuffer();
+        for (NodeState state : nodeStateMap.values()) {
+            if (sb.length() > 0) {
+                sb.append(ComplexNotationParser.LIST_LEVEL_DELIMITER);
+            }
+            sb.append(state.nodeId);
+            sb.append(ComplexNotationParser.NODE_LABEL_START_SYMBOL);
+            sb.append(state.getLabel());
+            sb.append(ComplexNotationParser.NODE_LABEL_END_SYMBOL);
+        }
+        return sb.toString() + restOfNotation;
+    }
+
+    /**
+     * validate the edited polymer. Attachments and edges are checked when the editor is created and preserved by each replacement,
+     * structure validation only rebuilds polymer nodes changed since last structure validation
+     * @param includeStructure
+     * @return true or exception
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.MonomerException
+     * @throws org.helm.notation.StructureException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    public boolean validate(boolean includeStructure) throws NotationException, MonomerException, StructureException, IOException, JDOMException {
+        if (!includeStructure) {
+            return true;
+        }
+
+        for (NodeState state : nodeStateMap.values()) {
+            if (structureDirtyNodes.contains(state.nodeId)) {
+                RgroupStructure struc = SimpleNotationParser.getSimplePolymerStructure(state.getLabel(), state.polymerType);
+                if (null == struc.getMolecule()) {
+                    throw new NotationException("Polymer notation contains non-specific monomer structure");
+                }
+                structureDirtyNodes.remove(state.nodeId);
+            }
+        }
+        structureValidated = true;
+        return true;
+    }
+
+    public boolean isStructureValidated() {
+        return structureValidated && structureDirtyNodes.isEmpty();
+    }
+
+    /**
+     * calculate molecule info of edited polymer, same as ComplexNotationParser.getMoleculeInfo() but only recalculates changed chunks
+     * @return MoleculeInfo
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.MonomerException
+     * @throws org.helm.notation.StructureException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     * @throws chemaxon.marvin.plugin.PluginException
+     */
+    public MoleculeInfo getMoleculeInfo() throws NotationException, MonomerException, StructureException, IOException, JDOMException, PluginException {
+        //deal with all connections between polymers
+        List<MoleculeInfo> caps = new ArrayList<MoleculeInfo>();
+        for (PolymerEdge edge : edgeList) {
+            if (edge.getEdgeType() == PolymerEdge.GENERIC_EDGE) {
+                //ignore generic connections
+                continue;
+            }
+            NodeState source = nodeStateMap.get(edge.getSourceNode());
+            caps.add(getCapMoleculeInfo(source.polymerType, source.monomerIDs.get(edge.getSourceMonomerNumber() - 1), edge.getSourceR()));
+            NodeState target = nodeStateMap.get(edge.getTargetNode());
+            caps.add(getCapMoleculeInfo(target.polymerType, target.monomerIDs.get(edge.getTargetMonomerNumber() - 1), edge.getTargetR()));
+        }
+
+        //deal with all simple polymers
+        List<MoleculeInfo> chunks = new ArrayList<MoleculeInfo>();
+        for (NodeState state : nodeStateMap.values()) {
+            chunks.add(getMoleculeInfo(state));
+        }
+
+        return StructureParser.processMoleculeInfo(chunks, caps);
+    }
+
+    private MoleculeInfo getMoleculeInfo(NodeState state) throws NotationException, MonomerException, StructureException, IOException, JDOMException, PluginException {
+        if (null != state.moleculeInfo) {
+            return state.moleculeInfo;
+        }
+
+        if (state.polymerType.equals(Monomer.CHEMICAL_POLYMER_TYPE)) {
+            state.moleculeInfo = SimpleNotationParser.getMoleculeInfo(state.getLabel(), state.polymerType);
+            return state.moleculeInfo;
+        }
+
+        List<String> chunkNotations = state.getChunkNotations();
+        while (state.chunkInfoList.size() < chunkNotations.size()) {
+            state.chunkInfoList.add(null);
+        }
+
+        List<MoleculeInfo> capMiList = new ArrayList<MoleculeInfo>();
+        //R2 caps
+        for (int i = 0; i < chunkNotations.size() - 1; i++) {
+            String lastID = state.monomerIDs.get(state.getChunkEnd(i) - 1);
+            capMiList.add(getCapMoleculeInfo(state.polymerType, lastID, "R2"));
+        }
+
+        //R1 caps
+        for (int i = 1; i < chunkNotations.size(); i++) {
+            String firstID = state.monomerIDs.get(state.getChunkStart(i));
+            capMiList.add(getCapMoleculeInfo(state.polymerType, firstID, "R1"));
+        }
+
+        List<MoleculeInfo> chunkMiList = new ArrayList<MoleculeInfo>();
+        for (int i = 0; i < chunkNotations.size(); i++) {
+            MoleculeInfo mi = state.chunkInfoList.get(i);
+            if (null == mi) {
+                String complexNotation = SimpleNotationParser.getComplexNotation(chunkNotations.get(i), state.polymerType);
+                String smiles = ComplexNotationParser.getComplexPolymerSMILES(complexNotation);
+                mi = StructureParser.getMoleculeInfo(smiles);
+                state.chunkInfoList.set(i, mi);
+            }
+            chunkMiList.add(mi);
+        }
+
+        state.moleculeInfo = StructureParser.processMoleculeInfo(chunkMiList, capMiList);
+        return state.moleculeInfo;
+    }
+
+    private MoleculeInfo getCapMoleculeInfo(String polymerType, String monomerID, String label) throws NotationException, MonomerException, IOException, JDOMException, PluginException {
+        String key = polymerType + ":" + monomerID + ":" + label;
+        MoleculeInfo mi = capInfoMap.get(key);
+        if (null == mi) {
+            Monomer monomer = SimpleNotationParser.getMonomer(monomerID, polymerType);
+            mi = monomer.getCapMoleculeInfo(label);
+            capInfoMap.put(key, mi);
+        }
+        return mi;
+    }
+
+    /**
+     * calculate extinction coefficient of edited polymer, only polymer nodes changed since last calculation are recalculated
+     * @param unitType either ExtinctionCoefficientCalculator.RNA_UNIT_TYPE or PEPTIDE_UNIT_TYPE
+     * @return extinction coefficient in given unit type
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.MonomerException
+     * @throws org.helm.notation.StructureException
+     * @throws org.helm.notation.CalculationException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    public float getExtinctionCoefficient(int unitType) throws NotationException, MonomerException, StructureException, CalculationException, IOException, JDOMException {
+        ExtinctionCoefficientCalculator calculator = ExtinctionCoefficientCalculator.getInstance();
+        float result = 0.0f;
+        for (NodeState state : nodeStateMap.values()) {
+            if (null == state.extinctionCoefficient) {
+                float ext = 0.0f;
+                if (state.polymerType.equals(Monomer.NUCLIEC_ACID_POLYMER_TYPE)) {
+                    ext = calculator.calculateFromRnaPolymerNotation(state.getLabel());
+                } else if (state.polymerType.equals(Monomer.PEPTIDE_POLYMER_TYPE)) {
+                    ext = calculator.calculateFromPeptidePolymerNotation(state.getLabel());
+                }
+                state.extinctionCoefficient = Float.valueOf(ext);
+            }
+
+            float ext = state.extinctionCoefficient.floatValue();
+            if (state.polymerType.equals(Monomer.NUCLIEC_ACID_POLYMER_TYPE) && unitType == ExtinctionCoefficientCalculator.PEPTIDE_UNIT_TYPE) {
+                ext = ext * 1000;
+            } else if (state.polymerType.equals(Monomer.PEPTIDE_POLYMER_TYPE) && unitType == ExtinctionCoefficientCalculator.RNA_UNIT_TYPE) {
+                ext = ext / 1000;
+            }
+            result = result + ext;
+        }
+        return result;
+    }
+
+    /**
+     * editing state of a single polymer node, monomer groups are kept as notation text so that unchanged groups are reused as is
+     */
+    private static class NodeState {
+
+        private String nodeId;
+        private String polymerType;
+        private String label;
+        private List<String> monomerIDs = new ArrayList<String>();
+        private List<String> groupNotations = new ArrayList<String>();
+        private List<Integer> groupStarts = new ArrayList<Integer>();
+        private int[] monomerGroupIndex;
+        private List<MoleculeInfo> chunkInfoList = new ArrayList<MoleculeInfo>();
+        private MoleculeInfo moleculeInfo;
+        private Float extinctionCoefficient;
+
+        private NodeState(PolymerNode node) throws NotationException {
+            nodeId = node.getId();
+            polymerType = node.getType();
+            label = node.getLabel();
+
+            if (polymerType.equals(Monomer.CHEMICAL_POLYMER_TYPE)) {
+                groupStarts.add(Integer.valueOf(0));
+                groupNotations.add(label);
+                monomerIDs.addAll(SimpleNotationParser.getMonomerIDList(label, polymerType));
+            } else {
+                String[] groups = label.split(SimpleNotationParser.GROUP_LEVEL_DELIMITER_REGEX);
+                for (String group : groups) {
+                    groupStarts.add(Integer.valueOf(monomerIDs.size()));
+                    groupNotations.add(group);
+                    monomerIDs.addAll(SimpleNotationParser.getMonomerIDList(group, polymerType));
+                }
+            }
+
+            monomerGroupIndex = new int[monomerIDs.size()];
+            for (int i = 0; i < groupStarts.size(); i++) {
+                int end = (i + 1 < groupStarts.size()) ? groupStarts.get(i + 1).intValue() : monomerIDs.size();
+                for (int j = groupStarts.get(i).intValue(); j < end; j++) {
+                    monomerGroupIndex[j] = i;
+                }
+            }
+        }
+
+        private String getLabel() {
+            if (null == label) {
+                StringBuilder sb = new StringBuilder();
+                for (String group : groupNotations) {
+                    if (sb.length() > 0) {
+                        sb.append(SimpleNotationParser.GROUP_LEVEL_DELIMITER);
+                    }
+                    sb.append(group);
+                }
+                label = sb.toString();
+            }
+            return label;
+        }
+
+        private void updateGroupNotation(int groupIndex) throws NotationException, MonomerException, IOException, JDOMException {
+            int start = groupStarts.get(groupIndex).intValue();
+            int end = (groupIndex + 1 < groupStarts.size()) ? groupStarts.get(groupIndex + 1).intValue() : monomerIDs.size();
+
+            StringBuilder sb = new StringBuilder();
+            for (int i = start; i < end; i++) {
+                String id = monomerIDs.get(i);
+                if (polymerType.equals(Monomer.CHEMICAL_POLYMER_TYPE)) {
+                    sb.append(id);
+                    continue;
+                }
+
+                boolean branch = SimpleNotationParser.getMonomer(id, polymerType).getMonomerType().equals(Monomer.BRANCH_MOMONER_TYPE);
+                if (branch) {
+                    sb.append(SimpleNotationParser.BRANCH_START_SYMBOL);
+                }
+                if (id.length() > 1) {
+                    sb.append(SimpleNotationParser.MODIFICATION_START_SYMBOL);
+                    sb.append(id);
+                    sb.append(SimpleNotationParser.MODIFICATION_END_SYMBOL);
+                } else {
+                    sb.append(id);
+                }
+                if (branch) {
+                    sb.append(SimpleNotationParser.BRANCH_END_SYMBOL);
+                }
+            }
+            groupNotations.set(groupIndex, sb.toString());
+            label = null;
+        }
+
+        private List<String> getChunkNotations() {
+            List<String> chunks = new ArrayList<String>();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 1; i <= groupNotations.size(); i++) {
+                if (sb.length() > 0) {
+                    sb.append(SimpleNotationParser.GROUP_LEVEL_DELIMITER);
+                }
+                sb.append(groupNotations.get(i - 1));
+
+                if ((i % NotationConstant.MONOMER_GROUP_COUNT_INTERVAL) == 0) {
+                    chunks.add(sb.toString());
+                    sb = new StringBuilder();
+                }
+            }
+            if (sb.length() > 0) {
+                chunks.add(sb.toString());
+            }
+            return chunks;
+        }
+
+        private int getChunkStart(int chunkIndex) {
+            return groupStarts.get(chunkIndex * NotationConstant.MONOMER_GROUP_COUNT_INTERVAL).intValue();
+        }
+
+        private int getChunkEnd(int chunkIndex) {
+            int nextGroup = (chunkIndex + 1) * NotationConstant.MONOMER_GROUP_COUNT_INTERVAL;
+            if (nextGroup < groupStarts.size()) {
+                return groupStarts.get(nextGroup).intValue();
+            }
+            return monomerIDs.size();
+        }
+    }
+}
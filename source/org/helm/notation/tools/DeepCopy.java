@@ -24,8 +24,12 @@ package org.helm.notation.tools;
 import org.helm.notation.MonomerException;
 import org.helm.notation.NotationException;
 import org.helm.notation.model.Attachment;
+import org.helm.notation.model.ComplexPolymer;
 import org.helm.notation.model.Monomer;
 import org.helm.notation.model.Nucleotide;
+import org.helm.notation.model.PolymerEdge;
+import org.helm.notation.model.PolymerNode;
+import org.helm.notation.model.RNAPolymerNode;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -36,146 +40,125 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- *
+ * Deep copies of model objects and lists.
+ * Model classes are copied through their copy constructors, strings and string arrays directly, and other objects through serialization.
+ * Model objects are matched by exact class, so that subclasses are not copied as their base class.
  * @author lih25
  */
 public class DeepCopy {
 
-    public static List copy(List list) throws IOException, ClassNotFoundException {
-        // serialize ArrayList into byte array
-
-        ByteArrayOutputStream baos =
-                new ByteArrayOutputStream(100);
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(list);
-        byte buf[] = baos.toByteArray();
-        oos.close();
-
-        // deserialize byte array into ArrayList
-
-        ByteArrayInputStream bais =
-                new ByteArrayInputStream(buf);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        ArrayList newlist =
-                (ArrayList) ois.readObject();
-        ois.close();
-
-        return newlist;
+    public static <T> List<T> copy(List<T> list) throws IOException, ClassNotFoundException {
+        return copy(new ArrayList<T>(list));
     }
 
-    public static ArrayList copy(ArrayList list) throws IOException, ClassNotFoundException {
-        // serialize ArrayList into byte array
-
-        ByteArrayOutputStream baos =
-                new ByteArrayOutputStream(100);
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(list);
-        byte buf[] = baos.toByteArray();
-        oos.close();
-
-        // deserialize byte array into ArrayList
-
-        ByteArrayInputStream bais =
-                new ByteArrayInputStream(buf);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        ArrayList newlist =
-                (ArrayList) ois.readObject();
-        ois.close();
+    //elements are copied to their own class
+    @SuppressWarnings("unchecked")
+    public static <T> ArrayList<T> copy(ArrayList<T> list) throws IOException, ClassNotFoundException {
+        if (list.getClass() != ArrayList.class) {
+            return (ArrayList<T>) serializeCopy(list);
+        }
 
+        ArrayList<T> newlist = new ArrayList<T>(list.size());
+        for (T element : list) {
+            newlist.add((T) copyElement(element));
+        }
         return newlist;
     }
 
     public static Monomer copy(Monomer monomer)
             throws IOException, MonomerException {
-        ByteArrayOutputStream baos =
-                new ByteArrayOutputStream(100);
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(monomer);
-        byte buf[] = baos.toByteArray();
-        oos.close();
-
-        // deserialize byte array into ArrayList
-
-        ByteArrayInputStream bais =
-                new ByteArrayInputStream(buf);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        Monomer newMonomer;
-        try {
-            newMonomer = (Monomer) ois.readObject();
-        } catch (ClassNotFoundException cnfe) {
-            throw new MonomerException("Unable to copy Monomer");
-        }
-        ois.close();
-
-        return newMonomer;
+        return new Monomer(monomer);
     }
 
     public static Attachment copy(Attachment attachment)
             throws IOException, MonomerException {
-        ByteArrayOutputStream baos =
-                new ByteArrayOutputStream(100);
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(attachment);
-        byte buf[] = baos.toByteArray();
-        oos.close();
+        return new Attachment(attachment);
+    }
 
-        // deserialize byte array into ArrayList
+    public static Nucleotide copy(Nucleotide nucleotide) throws IOException, NotationException {
+        return new Nucleotide(nucleotide);
+    }
 
-        ByteArrayInputStream bais =
-                new ByteArrayInputStream(buf);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        Attachment newAttachment;
-        try {
-            newAttachment = (Attachment) ois.readObject();
-        } catch (ClassNotFoundException cnfe) {
-            throw new MonomerException("Unable to copy Attachment");
-        }
+    public static PolymerNode copy(PolymerNode node) {
+        return node.copy();
+    }
 
-        ois.close();
+    public static PolymerEdge copy(PolymerEdge edge) {
+        return new PolymerEdge(edge);
+    }
 
-        return newAttachment;
+    public static ComplexPolymer copy(ComplexPolymer polymer) {
+        return new ComplexPolymer(polymer);
     }
 
-    public static Nucleotide copy(Nucleotide nucleotide) throws IOException, NotationException {
-        ByteArrayOutputStream baos =
-                new ByteArrayOutputStream(100);
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(nucleotide);
-        byte buf[] = baos.toByteArray();
-        oos.close();
+    public static Serializable copy(Serializable input) throws IOException, NotationException {
+        if (input.getClass() == ArrayList.class) {
+            try {
+                return copy((ArrayList<?>) input);
+            } catch (ClassNotFoundException cnfe) {
+                throw new NotationException("Unable to copy input object", cnfe);
+            }
+        }
 
-        // deserialize byte array into ArrayList
+        Object output = copyKnownType(input);
+        if (null != output) {
+            return (Serializable) output;
+        }
 
-        ByteArrayInputStream bais =
-                new ByteArrayInputStream(buf);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        Nucleotide nuc;
         try {
-            nuc = (Nucleotide) ois.readObject();
+            return (Serializable) serializeCopy(input);
         } catch (ClassNotFoundException cnfe) {
-            throw new NotationException("Unable to copy Nucleotide");
+            throw new NotationException("Unable to copy input object", cnfe);
         }
+    }
 
-        ois.close();
+    private static Object copyElement(Object element) throws IOException, ClassNotFoundException {
+        if (null == element) {
+            return null;
+        }
+        if (element.getClass() == ArrayList.class) {
+            return copy((ArrayList<?>) element);
+        }
+        Object copy = copyKnownType(element);
+        if (null != copy) {
+            return copy;
+        }
+        return serializeCopy(element);
+    }
 
-        return nuc;
+    //returns null for types without a direct copy
+    private static Object copyKnownType(Object input) {
+        Class<?> type = input.getClass();
+        if (type == String.class) {
+            return input;
+        } else if (type == String[].class) {
+            return ((String[]) input).clone();
+        } else if (type == Monomer.class) {
+            return new Monomer((Monomer) input);
+        } else if (type == Attachment.class) {
+            return new Attachment((Attachment) input);
+        } else if (type == Nucleotide.class) {
+            return new Nucleotide((Nucleotide) input);
+        } else if (type == PolymerNode.class || type == RNAPolymerNode.class) {
+            return ((PolymerNode) input).copy();
+        } else if (type == PolymerEdge.class) {
+            return new PolymerEdge((PolymerEdge) input);
+        } else if (type == ComplexPolymer.class) {
+            return new ComplexPolymer((ComplexPolymer) input);
+        }
+        return null;
     }
 
-    public static Serializable copy(Serializable input) throws IOException, NotationException {
-        ByteArrayOutputStream baos =  new ByteArrayOutputStream(100);
+    private static Object serializeCopy(Object input) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(100);
         ObjectOutputStream oos = new ObjectOutputStream(baos);
         oos.writeObject(input);
         byte buf[] = baos.toByteArray();
         oos.close();
 
-        ByteArrayInputStream bais =      new ByteArrayInputStream(buf);
+        ByteArrayInputStream bais = new ByteArrayInputStream(buf);
         ObjectInputStream ois = new ObjectInputStream(bais);
-        Serializable output;
-        try {
-            output = (Serializable) ois.readObject();
-        } catch (ClassNotFoundException cnfe) {
-            throw new NotationException("Unable to copy input object");
-        }
+        Object output = ois.readObject();
         ois.close();
 
         return output;
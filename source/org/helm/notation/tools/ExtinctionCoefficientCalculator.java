@@ -52,18 +52,23 @@ public class ExtinctionCoefficientCalculator {
     private static Map<String, Float> aminoAcidMap = new HashMap<String, Float>();
     private static String rnaPropertyFile = "/org/helm/notation/resources/RNAExtinctionCoefficient.properties";
     private static String peptidePropertyFile = "/org/helm/notation/resources/PEPTIDEExtinctionCoefficient.properties";
-    private static ExtinctionCoefficientCalculator instance;
+    private static volatile ExtinctionCoefficientCalculator instance;
 
     private ExtinctionCoefficientCalculator() {
     }
 
     public static ExtinctionCoefficientCalculator getInstance() throws CalculationException {
+        //coefficient maps are filled before the instance is published
         if (null == instance) {
-            instance = new ExtinctionCoefficientCalculator();
-            try {
-                initMaps();
-            } catch (IOException ex) {
-                throw new CalculationException("Unable to initialize extinction coefficient property files");
+            synchronized (ExtinctionCoefficientCalculator.class) {
+                if (null == instance) {
+                    try {
+                        initMaps();
+                    } catch (IOException ex) {
+                        throw new CalculationException("Unable to initialize extinction coefficient property files", ex);
+                    }
+                    instance = new ExtinctionCoefficientCalculator();
+                }
             }
         }
         return instance;
@@ -97,6 +102,10 @@ public class ExtinctionCoefficientCalculator {
     }
 
     private static void initMaps() throws IOException {
+        monoNucleotideMap.clear();
+        diNucleotideMap.clear();
+        aminoAcidMap.clear();
+
         InputStream ris = ExtinctionCoefficientCalculator.class.getResourceAsStream(rnaPropertyFile);
         Properties rp = new Properties();
         rp.load(ris);
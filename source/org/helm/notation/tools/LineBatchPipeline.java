@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.tools;
+
+import org.helm.notation.NotationContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class runs line oriented batch conversions as a bounded reader, workers and writer pipeline.
+ * Input lines are read in chunks from a LineChunkReader on a reader thread, converted by a pool of worker threads, and written in input order by the calling thread.
+ * At most two chunks per worker are in flight, so memory use does not depend on input size.
+ * An optional CheckpointListener is told the input offset and line count after every few written chunks, once output is flushed.
+ */
+public class LineBatchPipeline {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    public static final int DEFAULT_PROGRESS_INTERVAL = 100000;
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 100;
+    //queued by the reader after the last chunk
+    private static final PendingChunk END_OF_INPUT = new PendingChunk(new FutureTask<List<String>>(new Callable<List<String>>() {
+
+        public List<String> call() {
+            return null;
+        }
+    }), -1);
+    private LineConverter converter;
+    private int threadCount;
+    private boolean quiet;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private PrintStream console = System.out;
+    private CheckpointListener checkpointListener;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    /**
+     * Converts one input line into one output line, must be thread safe and should report record errors in its output instead of throwing
+     */
+    public interface LineConverter {
+
+        public String convert(String line);
+    }
+
+    /**
+     * Receives progress that is safely written, so that a later run can resume after it
+     */
+    public interface CheckpointListener {
+
+        /**
+         * @param inputOffset input byte offset after the last written line
+         * @param lineCount number of lines written in this run
+         * @throws java.io.IOException
+         */
+        public void checkpoint(long inputOffset, long lineCount) throws IOException;
+    }
+
+    //converted lines of one chunk and input offset right after it
+    private static class PendingChunk {
+
+        private Future<List<String>> lines;
+        private long inputOffset;
+
+        PendingChunk(Future<List<String>> lines, long inputOffset) {
+            this.lines = lines;
+            this.inputOffset = inputOffset;
+        }
+    }
+
+    /**
+     * @param converter line converter
+     * @param threadCount number of worker threads
+     * @param quiet true to report periodic progress only, false to echo every output line to console
+     */
+    public LineBatchPipeline(LineConverter converter, int threadCount, boolean quiet) {
+        this.converter = converter;
+        this.threadCount = (threadCount < 1) ? 1 : threadCount;
+        this.quiet = quiet;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = (chunkSize < 1) ? 1 : chunkSize;
+    }
+
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    public void setProgressInterval(int progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    public void setConsole(PrintStream console) {
+        this.console = console;
+    }
+
+    /**
+     * @param checkpointListener listener called after output is flushed, requires seekable input
+     * @param checkpointInterval number of chunks between checkpoints
+     */
+    public void setCheckpointListener(CheckpointListener checkpointListener, int checkpointInterval) {
+        this.checkpointListener = checkpointListener;
+        this.checkpointInterval = (checkpointInterval < 1) ? 1 : checkpointInterval;
+    }
+
+    /**
+     * This method converts all lines from input and writes the results in input order, one output line per input line
+     * @param in input lines
+     * @param out output, flushed but not closed at the end
+     * @return number of lines converted
+     * @throws java.io.IOException
+     */
+    public long run(BufferedReader in, Writer out) throws IOException {
+        return run(LineChunkReader.forReader(in), out);
+    }
+
+    /**
+     * This method converts all lines from chunked input and writes the results in input order, one output line per input line
+     * @param in chunked input, not closed at the end
+     * @param out output, flushed but not closed at the end
+     * @return number of lines converted
+     * @throws java.io.IOException
+     */
+    public long run(final LineChunkReader in, Writer out) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        //pooled threads do not inherit the library of the caller, a reload during the job does not reach it either
+        final NotationContext context = NotationContext.snapshot();
+        final BlockingQueue<PendingChunk> pending = new ArrayBlockingQueue<PendingChunk>(threadCount * 2);
+        final IOException[] readError = new IOException[1];
+
+        Thread readerThread = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    List<String> chunk = in.readChunk(chunkSize);
+                    while (!chunk.isEmpty()) {
+                        final List<String> lines = chunk;
+                        Future<List<String>> future = executor.submit(NotationContext.withContext(context, new Callable<List<String>>() {
+
+                            public List<String> call() {
+                                List<String> l = new ArrayList<String>(lines.size());
+                                for (String line : lines) {
+                                    l.add(converter.convert(line));
+                                }
+                                return l;
+                            }
+                        }));
+                        pending.put(new PendingChunk(future, in.getOffset()));
+                        chunk = in.readChunk(chunkSize);
+                    }
+                } catch (IOException ioe) {
+                    readError[0] = ioe;
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                try {
+                    pending.put(END_OF_INPUT);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "LineBatchPipeline-reader");
+        readerThread.setDaemon(true);
+
+        long count = 0;
+        long chunkCount = 0;
+        long start = System.currentTimeMillis();
+        try {
+            readerThread.start();
+            PendingChunk chunk = pending.take();
+            while (chunk != END_OF_INPUT) {
+                for (String line : chunk.lines.get()) {
+                    count++;
+                    out.write(line);
+                    out.write("\n");
+                    if (!quiet) {
+                        console.print("" + count + "\t" + line + "\n");
+                    } else if (progressInterval > 0 && count % progressInterval == 0) {
+                        printProgress(count, start);
+                    }
+                }
+                chunkCount++;
+                if (null != checkpointListener && chunkCount % checkpointInterval == 0) {
+                    out.flush();
+                    checkpointListener.checkpoint(chunk.inputOffset, count);
+                }
+                chunk = pending.take();
+            }
+            out.flush();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch conversion interrupted");
+        } catch (ExecutionException ee) {
+            throw new IOException("Batch conversion failed: " + ee.getCause());
+        } finally {
+            readerThread.interrupt();
+            executor.shutdownNow();
+        }
+
+        if (null != readError[0]) {
+            throw readError[0];
+        }
+        if (quiet) {
+            printProgress(count, start);
+        }
+        return count;
+    }
+
+    private void printProgress(long count, long start) {
+        long elapsed = System.currentTimeMillis() - start;
+        long rate = (elapsed > 0) ? count * 1000 / elapsed : count;
+        console.println("Processed " + count + " lines in " + elapsed + " ms (" + rate + " lines/s)");
+    }
+}
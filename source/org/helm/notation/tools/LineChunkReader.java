@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.tools;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reads line oriented input in chunks of lines for batch conversion.
+ * Files are memory mapped in windows and split on line boundaries, each chunk is decoded from UTF-8 in one pass; other input is streamed.
+ */
+public abstract class LineChunkReader implements Closeable {
+
+    public static final String STDIN = "-";
+    public static final String UTF8 = "UTF-8";
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * This method reads the next chunk of lines, line terminators are removed
+     * @param maxLines maximum number of lines in chunk
+     * @return lines in input order, empty at end of input
+     * @throws java.io.IOException
+     */
+    public abstract List<String> readChunk(int maxLines) throws IOException;
+
+    /**
+     * @return byte offset right after the last chunk read, -1 if input is not seekable
+     */
+    public abstract long getOffset();
+
+    /**
+     * This method moves reading to given byte offset, which must be a line start such as a value returned by getOffset
+     * @param offset byte offset
+     * @throws java.io.IOException if input is not seekable
+     */
+    public void seek(long offset) throws IOException {
+        throw new IOException("Input is not seekable");
+    }
+
+    public abstract void close() throws IOException;
+
+    /**
+     * This method opens input for chunked reading
+     * @param path input file path, or "-" for standard input
+     * @return memory mapped reader for files, streaming reader for standard input
+     * @throws java.io.IOException
+     */
+    public static LineChunkReader open(String path) throws IOException {
+        if (STDIN.equals(path)) {
+            return new StreamLineChunkReader(new BufferedReader(new InputStreamReader(System.in, UTF8)), false);
+        }
+        return new MappedLineChunkReader(new File(path), DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param reader line input
+     * @return streaming reader over line input, closing it closes the reader
+     */
+    public static LineChunkReader forReader(BufferedReader reader) {
+        return new StreamLineChunkReader(reader, true);
+    }
+
+    private static class StreamLineChunkReader extends LineChunkReader {
+
+        private BufferedReader reader;
+        private boolean closeReader;
+        private boolean started;
+        private StringBuilder line = new StringBuilder();
+
+        StreamLineChunkReader(BufferedReader reader, boolean closeReader) {
+            this.reader = reader;
+            this.closeReader = closeReader;
+        }
+
+        public List<String> readChunk(int maxLines) throws IOException {
+            List<String> chunk = new ArrayList<String>();
+            String next = null;
+            while (chunk.size() < maxLines && null != (next = readLine())) {
+                chunk.add(next);
+            }
+            return chunk;
+        }
+
+        //same rules as the mapped reader: split on LF only, drop a CR before it and the leading byte order mark
+        private String readLine() throws IOException {
+            line.setLength(0);
+            int c = reader.read();
+            if (!started) {
+                started = true;
+                if (c == '\uFEFF') {
+                    c = reader.read();
+                }
+            }
+            if (c < 0) {
+                return null;
+            }
+            while (c >= 0 && c != '\n') {
+                line.append((char) c);
+                c = reader.read();
+            }
+            int len = line.length();
+            if (len > 0 && line.charAt(len - 1) == '\r') {
+                line.setLength(len - 1);
+            }
+            return line.toString();
+        }
+
+        public long getOffset() {
+            return -1;
+        }
+
+        public void close() throws IOException {
+            if (closeReader) {
+                reader.close();
+            }
+        }
+    }
+
+    private static class MappedLineChunkReader extends LineChunkReader {
+
+        private RandomAccessFile file;
+        private FileChannel channel;
+        private long size;
+        private long position;
+        private int windowSize;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private CharsetDecoder decoder;
+
+        MappedLineChunkReader(File input, int windowSize) throws IOException {
+            this.file = new RandomAccessFile(input, "r");
+            this.channel = file.getChannel();
+            this.size = channel.size();
+            this.windowSize = windowSize;
+            this.decoder = Charset.forName(UTF8).newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+            skipByteOrderMark();
+        }
+
+        public List<String> readChunk(int maxLines) throws IOException {
+            List<String> chunk = new ArrayList<String>();
+            int mapSize = windowSize;
+            while (position < size) {
+                if (null == window || position >= windowStart + window.limit()) {
+                    map(mapSize);
+                }
+
+                int from = (int) (position - windowStart);
+                int limit = window.limit();
+                int end = from;
+                int count = 0;
+                for (int i = from; i < limit && count < maxLines; i++) {
+                    if (window.get(i) == '\n') {
+                        count++;
+                        end = i + 1;
+                    }
+                }
+                //last line without terminator
+                if (count < maxLines && end < limit && windowStart + limit >= size) {
+                    count++;
+                    end = limit;
+                }
+
+                if (count > 0) {
+                    decodeLines(from, end, chunk);
+                    position = windowStart + end;
+                    return chunk;
+                }
+
+                //line crosses window end, map again from line start, larger if the line does not fit a window
+                if (windowStart == position) {
+                    if (mapSize >= Integer.MAX_VALUE / 2) {
+                        throw new IOException("Line at offset " + position + " is too long");
+                    }
+                    mapSize = mapSize * 2;
+                }
+                window = null;
+            }
+            return chunk;
+        }
+
+        public long getOffset() {
+            return position;
+        }
+
+        public void seek(long offset) throws IOException {
+            if (offset < 0 || offset > size) {
+                throw new IOException("Offset " + offset + " is outside input of " + size + " bytes");
+            }
+            position = offset;
+            window = null;
+        }
+
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+            file.close();
+        }
+
+        private void map(int mapSize) throws IOException {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min((long) mapSize, size - windowStart));
+        }
+
+        private void decodeLines(int from, int end, List<String> chunk) throws IOException {
+            ByteBuffer bytes = window.duplicate();
+            bytes.limit(end);
+            bytes.position(from);
+            CharBuffer chars = decoder.decode(bytes);
+            char[] buf = chars.array();
+            int offset = chars.arrayOffset();
+            int stop = offset + chars.limit();
+            int start = offset;
+            for (int i = offset; i <= stop; i++) {
+                if (i == stop || buf[i] == '\n') {
+                    if (i == stop && start == stop) {
+                        break;
+                    }
+                    int len = i - start;
+                    if (len > 0 && buf[i - 1] == '\r') {
+                        len--;
+                    }
+                    chunk.add(new String(buf, start, len));
+                    start = i + 1;
+                }
+            }
+        }
+
+        private void skipByteOrderMark() throws IOException {
+            if (size >= 3) {
+                ByteBuffer head = ByteBuffer.allocate(3);
+                channel.read(head, 0);
+                if ((head.get(0) & 0xFF) == 0xEF && (head.get(1) & 0xFF) == 0xBB && (head.get(2) & 0xFF) == 0xBF) {
+                    position = 3;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.tools;
+
+import org.helm.notation.NotationException;
+import org.helm.notation.model.PolymerEdge;
+
+/**
+ * Empty implementation of NotationEventHandler, extend it and override the events of interest
+ */
+public class NotationEventAdapter implements NotationEventHandler {
+
+    public void startPolymer(String nodeId, String polymerType) throws NotationException {
+    }
+
+    public void monomer(String nodeId, int monomerNumber, String monomerID) throws NotationException {
+    }
+
+    public void branchMonomer(String nodeId, int monomerNumber, String monomerID) throws NotationException {
+    }
+
+    public void endPolymer(String nodeId, int monomerCount) throws NotationException {
+    }
+
+    public void edge(PolymerEdge edge) throws NotationException {
+    }
+
+    public void basePair(PolymerEdge edge) throws NotationException {
+    }
+
+    public void annotation(String nodeId, String annotation) throws NotationException {
+    }
+
+    public void endNotation(String other) throws NotationException {
+    }
+}
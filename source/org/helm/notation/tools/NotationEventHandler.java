@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.tools;
+
+import org.helm.notation.NotationException;
+import org.helm.notation.model.PolymerEdge;
+
+/**
+ * Callback interface for NotationStreamParser. Events are reported in the order they appear in complex notation,
+ * throw NotationException from any callback to stop parsing.
+ */
+public interface NotationEventHandler {
+
+    /**
+     * called when polymer node starts, such as RNA1{
+     * @param nodeId polymer node ID
+     * @param polymerType polymer type of the node
+     */
+    public void startPolymer(String nodeId, String polymerType) throws NotationException;
+
+    /**
+     * called for each backbone monomer, and for the single monomer of CHEM node
+     * @param nodeId polymer node ID
+     * @param monomerNumber 1 based monomer position in polymer node, as used in edges
+     * @param monomerID monomer ID without square brackets
+     */
+    public void monomer(String nodeId, int monomerNumber, String monomerID) throws NotationException;
+
+    /**
+     * called for each branch monomer, such as the base in R(A)P
+     * @param nodeId polymer node ID
+     * @param monomerNumber 1 based monomer position in polymer node, as used in edges
+     * @param monomerID monomer ID without square brackets
+     */
+    public void branchMonomer(String nodeId, int monomerNumber, String monomerID) throws NotationException;
+
+    /**
+     * called when polymer node ends
+     * @param nodeId polymer node ID
+     * @param monomerCount total number of monomers in polymer node
+     */
+    public void endPolymer(String nodeId, int monomerCount) throws NotationException;
+
+    public void edge(PolymerEdge edge) throws NotationException;
+
+    public void basePair(PolymerEdge edge) throws NotationException;
+
+    public void annotation(String nodeId, String annotation) throws NotationException;
+
+    /**
+     * called once when the complete notation has been parsed
+     * @param other the fifth (other) component of complex notation, could be empty
+     */
+    public void endNotation(String other) throws NotationException;
+}
@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.tools;
+
+import org.helm.notation.MonomerFactory;
+import org.helm.notation.NotationContext;
+import org.helm.notation.NucleotideFactory;
+import org.helm.notation.model.MoleculeInfo;
+import org.helm.notation.model.PolymerNode;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class calculates properties of complex notations line by line for batch jobs:
+ * monomer counts, molecular formula, molecular weight, exact mass, extinction coefficient and canonical notation.
+ * Output is one tab separated or JSON line per notation, a failed notation reports its error in the output line.
+ * Results of repeated notations are served from a cache shared by all worker threads. The cache belongs to one library, it is replaced
+ * when a request uses another one, such as after a reload or under another bound NotationContext, so results of different libraries never mix.
+ */
+public class NotationPropertyCalculator implements LineBatchPipeline.LineConverter {
+
+    public static final String TSV_FORMAT = "tsv";
+    public static final String JSON_LINES_FORMAT = "jsonl";
+    public static final String TSV_HEADER = "notation\tmonomer_counts\ttotal_monomer_count\tmolecular_formula\tmolecular_weight\texact_mass\textinction_coefficient\tcanonical_notation\terror";
+    public static final int MAX_CACHE_SIZE = 100000;
+    private String format;
+    private volatile ResultCache resultCache = new ResultCache(null, null);
+
+    /**
+     * @param format TSV_FORMAT or JSON_LINES_FORMAT
+     */
+    public NotationPropertyCalculator(String format) {
+        if (JSON_LINES_FORMAT.equalsIgnoreCase(format)) {
+            this.format = JSON_LINES_FORMAT;
+        } else {
+            this.format = TSV_FORMAT;
+        }
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String convert(String line) {
+        ResultCache cache = getResultCache();
+        if (null == cache) {
+            return calculate(line);
+        }
+        String result = cache.results.get(line);
+        if (null == result) {
+            result = calculate(line);
+            //result of a library replaced meanwhile is not cached
+            if (cache == resultCache && cache.results.size() < MAX_CACHE_SIZE) {
+                cache.results.putIfAbsent(line, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return cache of the library the current thread uses, null if no library is loaded yet
+     */
+    private ResultCache getResultCache() {
+        NotationContext context = NotationContext.snapshot();
+        if (null == context) {
+            return null;
+        }
+        MonomerFactory monomerFactory = context.getMonomerFactory();
+        NucleotideFactory nucleotideFactory = context.getNucleotideFactory();
+        ResultCache cache = resultCache;
+        if (!cache.isFor(monomerFactory, nucleotideFactory)) {
+            synchronized (this) {
+                cache = resultCache;
+                if (!cache.isFor(monomerFactory, nucleotideFactory)) {
+                    cache = new ResultCache(monomerFactory, nucleotideFactory);
+                    resultCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private String calculate(String line) {
+        String notation = line.trim();
+        String[] values = new String[7];
+        String error = null;
+        try {
+            if (notation.length() == 0) {
+                throw new IllegalArgumentException("Notation is empty");
+            }
+
+            List<PolymerNode> nodes = ComplexNotationParser.getPolymerNodeList(notation);
+            StringBuilder counts = new StringBuilder();
+            int total = 0;
+            for (PolymerNode node : nodes) {
+                int count = SimpleNotationParser.getMonomerCount(node.getLabel(), node.getType());
+                total = total + count;
+                if (counts.length() > 0) {
+                    counts.append(",");
+                }
+                counts.append(node.getId());
+                counts.append("=");
+                counts.append(count);
+            }
+            values[0] = counts.toString();
+            values[1] = String.valueOf(total);
+
+            MoleculeInfo mi = ComplexNotationParser.getMoleculeInfo(notation);
+            values[2] = mi.getMolecularFormula();
+            values[3] = formatNumber(mi.getMolecularWeight());
+            values[4] = formatNumber(mi.getExactMass());
+            values[5] = formatNumber(ExtinctionCoefficientCalculator.getInstance().calculateFromComplexNotation(notation));
+            values[6] = ComplexNotationParser.getCanonicalNotation(notation);
+        } catch (Exception e) {
+            error = (null == e.getMessage()) ? e.toString() : e.getMessage();
+            values = new String[7];
+        }
+
+        if (JSON_LINES_FORMAT.equals(format)) {
+            return toJsonLine(notation, values, error);
+        }
+        return toTsvLine(notation, values, error);
+    }
+
+    private String toTsvLine(String notation, String[] values, String error) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(cleanTsv(notation));
+        for (String value : values) {
+            sb.append("\t");
+            sb.append(cleanTsv(value));
+        }
+        sb.append("\t");
+        sb.append(cleanTsv(error));
+        return sb.toString();
+    }
+
+    private String toJsonLine(String notation, String[] values, String error) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"notation\":");
+        appendJsonString(sb, notation);
+        if (null == error) {
+            sb.append(",\"monomerCounts\":");
+            appendJsonString(sb, values[0]);
+            sb.append(",\"totalMonomerCount\":");
+            sb.append(values[1]);
+            sb.append(",\"molecularFormula\":");
+            appendJsonString(sb, values[2]);
+            sb.append(",\"molecularWeight\":");
+            appendJsonNumber(sb, values[3]);
+            sb.append(",\"exactMass\":");
+            appendJsonNumber(sb, values[4]);
+            sb.append(",\"extinctionCoefficient\":");
+            appendJsonNumber(sb, values[5]);
+            sb.append(",\"canonicalNotation\":");
+            appendJsonString(sb, values[6]);
+        } else {
+            sb.append(",\"error\":");
+            appendJsonString(sb, error);
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    /**
+     * NaN and Infinity have no JSON representation, they are reported as a
+     * missing value instead
+     * @param value calculated property
+     * @return decimal text, or null for a non-finite value
+     */
+    private static String formatNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return null;
+        }
+        return String.valueOf(value);
+    }
+
+    private static String formatNumber(float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return null;
+        }
+        return String.valueOf(value);
+    }
+
+    private static void appendJsonNumber(StringBuilder sb, String s) {
+        sb.append((null == s) ? "null" : s);
+    }
+
+    private static String cleanTsv(String s) {
+        if (null == s) {
+            return "";
+        }
+        return s.replaceAll("[\\t\\r\\n]+", " ");
+    }
+
+    private static void appendJsonString(StringBuilder sb, String s) {
+        if (null == s) {
+            sb.append("null");
+            return;
+        }
+        sb.append("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append("\"");
+    }
+
+    private static class ResultCache {
+
+        private final MonomerFactory monomerFactory;
+        private final NucleotideFactory nucleotideFactory;
+        private final ConcurrentHashMap<String, String> results = new ConcurrentHashMap<String, String>();
+
+        ResultCache(MonomerFactory monomerFactory, NucleotideFactory nucleotideFactory) {
+            this.monomerFactory = monomerFactory;
+            this.nucleotideFactory = nucleotideFactory;
+        }
+
+        boolean isFor(MonomerFactory monomerFactory, NucleotideFactory nucleotideFactory) {
+            return null != monomerFactory && this.monomerFactory == monomerFactory && this.nucleotideFactory == nucleotideFactory;
+        }
+    }
+}
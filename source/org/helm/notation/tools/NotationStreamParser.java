@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.tools;
+
+import org.helm.notation.NotationException;
+import org.helm.notation.model.Monomer;
+import org.helm.notation.model.PolymerNode;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * This class parses complex notation from a Reader and reports its content to NotationEventHandler as it is read.
+ * Only the current monomer ID, edge or annotation is held in memory, polymer node labels are never materialized (except for CHEM nodes,
+ * which contain a single monomer), so that counting and property accumulation can run on notations of any size.
+ * Monomer tokenization follows SimpleNotationParser.getMonomerIDList(), and edges are parsed by EdgeParser.
+ * Monomer IDs of simple polymers are not validated against monomer database.
+ * CHEM node labels are resolved like ComplexNotationParser does, so ad hoc SMILES are looked up and registered as ad hoc CHEM monomers.
+ */
+public class NotationStreamParser {
+
+    private static final int EOF = -1;
+
+    /**
+     * parse complex notation string, convenient method for parse(Reader, NotationEventHandler)
+     * @param complexNotation
+     * @param handler
+     * @throws org.helm.notation.NotationException
+     * @throws java.io.IOException
+     */
+    public static void parse(String complexNotation, NotationEventHandler handler) throws NotationException, IOException {
+        parse(new StringReader(complexNotation), handler);
+    }
+
+    /**
+     * parse complex notation from reader, the reader is not closed
+     * @param reader
+     * @param handler
+     * @throws org.helm.notation.NotationException
+     * @throws java.io.IOException
+     */
+    public static void parse(Reader reader, NotationEventHandler handler) throws NotationException, IOException {
+        BufferedReader in = (reader instanceof BufferedReader) ? (BufferedReader) reader : new BufferedReader(reader);
+
+        //Node List
+        int c;
+        do {
+            String nodeId = readUntil(in, ComplexNotationParser.NODE_LABEL_START_SYMBOL.charAt(0), "Invalid complex notation format,missing first component stopper }$");
+            if (nodeId.length() == 0) {
+                throw new NotationException(ComplexNotationParser.INVALID_NODE_ID + ": node ID is empty");
+            }
+            ComplexNotationParser.validateNodeID(nodeId);
+            String polymerType = PolymerNode.getPolymerType(nodeId);
+
+            handler.startPolymer(nodeId, polymerType);
+            int count = parsePolymerLabel(in, nodeId, polymerType, handler);
+            handler.endPolymer(nodeId, count);
+
+            c = in.read();
+            if (c != ComplexNotationParser.LIST_LEVEL_DELIMITER.charAt(0) && c != ComplexNotationParser.TOP_LEVEL_DELIMITER.charAt(0)) {
+                throw new NotationException("Invalid complex notation format,missing first component stopper }$");
+            }
+        } while (c == ComplexNotationParser.LIST_LEVEL_DELIMITER.charAt(0));
+
+        //Edge List and Base Pair List
+        for (int section = 1; section <= 2; section++) {
+            StringBuilder item = new StringBuilder();
+            while ((c = readItem(in, item)) != EOF) {
+                if (item.length() > 0) {
+                    if (section == 1) {
+                        handler.edge(EdgeParser.parse(item.toString()));
+                    } else {
+                        handler.basePair(EdgeParser.parse(item.toString()));
+                    }
+                }
+                item.setLength(0);
+                if (c == ComplexNotationParser.TOP_LEVEL_DELIMITER.charAt(0)) {
+                    break;
+                }
+            }
+            if (c == EOF) {
+                throw new NotationException("Invalid complex notation format, must have four positional delimieters $$$$");
+            }
+        }
+
+        //Node Label List
+        StringBuilder item = new StringBuilder();
+        while ((c = readItem(in, item)) != EOF) {
+            if (item.toString().trim().length() > 0) {
+                String annotation = item.toString();
+                int start = annotation.indexOf(ComplexNotationParser.NODE_LABEL_START_SYMBOL);
+                int end = annotation.indexOf(ComplexNotationParser.NODE_LABEL_END_SYMBOL);
+                if (start <= 0 || end < start) {
+                    throw new NotationException("Invalid polymer node annotation: " + annotation);
+                }
+                handler.annotation(annotation.substring(0, start), annotation.substring(start + 1, end));
+            }
+            item.setLength(0);
+            if (c == ComplexNotationParser.TOP_LEVEL_DELIMITER.charAt(0)) {
+                break;
+            }
+        }
+        if (c == EOF) {
+            throw new NotationException("Invalid complex notation format, must have four positional delimieters $$$$");
+        }
+
+        //Other
+        StringBuilder other = new StringBuilder();
+        while ((c = in.read()) != EOF) {
+            other.append((char) c);
+        }
+        handler.endNotation(other.toString());
+    }
+
+    /**
+     * reads polymer label up to and including node label end symbol }, and reports monomers
+     * @return number of monomers in polymer label
+     */
+    private static int parsePolymerLabel(BufferedReader in, String nodeId, String polymerType, NotationEventHandler handler) throws NotationException, IOException {
+        char labelEnd = ComplexNotationParser.NODE_LABEL_END_SYMBOL.charAt(0);
+
+        //CHEMICAL can have only one monomer
+        if (polymerType.equals(Monomer.CHEMICAL_POLYMER_TYPE)) {
+            String label = readUntil(in, labelEnd, ComplexNotationParser.INVALID_POLYMER_NODE + ": " + nodeId);
+            String id = SimpleNotationParser.preprocessChemNode(label);
+            handler.monomer(nodeId, 1, id);
+            return 1;
+        }
+
+        char groupDelimiter = SimpleNotationParser.GROUP_LEVEL_DELIMITER.charAt(0);
+        char modificationStart = SimpleNotationParser.MODIFICATION_START_SYMBOL.charAt(0);
+        char modificationEnd = SimpleNotationParser.MODIFICATION_END_SYMBOL.charAt(0);
+        char branchStart = SimpleNotationParser.BRANCH_START_SYMBOL.charAt(0);
+        char branchEnd = SimpleNotationParser.BRANCH_END_SYMBOL.charAt(0);
+
+        int count = 0;
+        boolean prevBranch = false;
+        int c;
+        while ((c = in.read()) != labelEnd) {
+            if (c == EOF) {
+                throw new NotationException(ComplexNotationParser.INVALID_POLYMER_NODE + ": " + nodeId);
+            } else if (c == groupDelimiter) {
+                continue;
+            } else if (c == modificationStart) {
+                String id = readUntil(in, modificationEnd, ComplexNotationParser.INVALID_POLYMER_NODE + ": " + nodeId);
+                count++;
+                handler.monomer(nodeId, count, id);
+                prevBranch = false;
+            } else if (c == branchStart) {
+                if (polymerType.equals(Monomer.PEPTIDE_POLYMER_TYPE)) {
+                    throw new NotationException("Invalid Polymer Notation: Peptide polymer cannot have branches");
+                }
+                if (count == 0) {
+                    throw new NotationException("Invalid Polymer Notation: branch monomer is not allowed at the beginnig of notation");
+                }
+                if (prevBranch) {
+                    throw new NotationException("Invalid Polymer Notation: branch monomers cannot be connected with each other");
+                }
+
+                String branch = readUntil(in, branchEnd, ComplexNotationParser.INVALID_POLYMER_NODE + ": " + nodeId);
+                String id = null;
+                if (branch.length() > 1) {
+                    if (branch.startsWith(SimpleNotationParser.MODIFICATION_START_SYMBOL) && branch.endsWith(SimpleNotationParser.MODIFICATION_END_SYMBOL)) {
+                        id = branch.replaceAll(SimpleNotationParser.MODIFICATION_DELIMITER_REGEX, "");
+                    } else {
+                        throw new NotationException("Invalid Polymer Notation: modified monomer must be enclosed by square brackets");
+                    }
+                } else if (branch.length() == 1) {
+                    id = branch;
+                } else {
+                    throw new NotationException("Invalid Polymer Notation: branch monomer not found");
+                }
+                count++;
+                handler.branchMonomer(nodeId, count, id);
+                prevBranch = true;
+            } else {
+                count++;
+                handler.monomer(nodeId, count, String.valueOf((char) c));
+                prevBranch = false;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * reads characters up to (and consumes) the stop character
+     * @return characters before stop character
+     */
+    private static String readUntil(BufferedReader in, char stop, String errorMessage) throws NotationException, IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != stop) {
+            if (c == EOF) {
+                throw new NotationException(errorMessage);
+            }
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * reads one list item, up to (and consumes) list level or top level delimiter
+     * @return the delimiter, or EOF
+     */
+    private static int readItem(BufferedReader in, StringBuilder item) throws IOException {
+        int c;
+        while ((c = in.read()) != EOF) {
+            if (c == ComplexNotationParser.LIST_LEVEL_DELIMITER.charAt(0) || c == ComplexNotationParser.TOP_LEVEL_DELIMITER.charAt(0)) {
+                return c;
+            }
+            item.append((char) c);
+        }
+        return EOF;
+    }
+}
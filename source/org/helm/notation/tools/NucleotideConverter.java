@@ -43,16 +43,20 @@ import org.jdom.JDOMException;
  */
 public class NucleotideConverter {
 
-    private static NucleotideConverter instance;
+    private static volatile NucleotideConverter instance;
 
     private NucleotideConverter() {
     }
 
     public static NucleotideConverter getInstance() throws IOException, JDOMException, NotationException, MonomerException {
         if (null == instance) {
-            MonomerFactory.getInstance();
-            NucleotideFactory.getInstance();
-            instance = new NucleotideConverter();
+            synchronized (NucleotideConverter.class) {
+                if (null == instance) {
+                    MonomerFactory.getInstance();
+                    NucleotideFactory.getInstance();
+                    instance = new NucleotideConverter();
+                }
+            }
         }
         return instance;
     }
@@ -28,6 +28,7 @@ import org.helm.notation.model.Nucleotide;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -61,6 +62,14 @@ public class NucleotideSequenceParser {
         complementMap.put("T", "A");
         complementMap.put("X", "X");
     }
+    //natural analog to complement, indexed by character
+    private static final char[] COMPLEMENT_TABLE = new char[128];
+
+    static {
+        for (Map.Entry<String, String> entry : complementMap.entrySet()) {
+            COMPLEMENT_TABLE[entry.getKey().charAt(0)] = entry.getValue().charAt(0);
+        }
+    }
     public static final String RNA_DESIGN_NONE = "NONE";
     public static final String RNA_DESIGN_TUSCHL_19_PLUS_2 = "TUSCHL_19_PLUS_2";
 //    ss 5   1------19--
@@ -309,38 +318,13 @@ public class NucleotideSequenceParser {
         if (null == notationSource) {
             throw new NotationException("Notation Source must be specified");
         }
-        Map<String, Map<String, String>> templates = NucleotideFactory.getInstance().getNucleotideTemplates();
-        Map<String, String> nucleotides = null;
-        if (templates.containsKey(notationSource)) {
-            nucleotides = templates.get(notationSource);
-        } else {
+        NucleotideSymbolTrie trie = NucleotideFactory.getInstance().getNucleotideSymbolTrie(notationSource);
+        if (null == trie) {
             throw new NotationException("Unknown Notation Source [" + notationSource + "]");
         }
-        Set<String> keySet = nucleotides.keySet();
-
-        //walk the sequence
-        List<Nucleotide> l = new ArrayList<Nucleotide>();
-        int pos = 0;
-        while (pos < nonDirectionSeuqence.length()) {
-            boolean found = false;
-            for (Iterator i = keySet.iterator(); i.hasNext();) {
-                String symbol = (String) i.next();
-
-                if (nonDirectionSeuqence.startsWith(symbol, pos)) {
-                    found = true;
-                    String notation = nucleotides.get(symbol);
-                    Nucleotide nuc = new Nucleotide(symbol, notation);
-                    l.add(nuc);
-                    pos = pos + symbol.length();
-                    break;
-                }
-            }
-            if (!found) {
-                throw new NotationException("Sequence contains unknown nucleotide starting at " + nonDirectionSeuqence.substring(pos));
-            }
-        }
 
-        return l;
+        //longest symbol match at each position
+        return trie.tokenize(nonDirectionSeuqence);
     }
 
     public static Map<String, Map<String, String>> getNucleotideTemplates(Element templatesElement) {
@@ -443,22 +427,41 @@ public class NucleotideSequenceParser {
     public static String getSirnaNotation(String senseSeq, String antiSenseSeq, String rnaDesignType) throws NotationException, IOException, JDOMException {
         validateSirnaDesign(senseSeq, antiSenseSeq, rnaDesignType);
 
+        String ssNotation = null;
+        if (senseSeq != null && senseSeq.length() > 0) {
+            ssNotation = removeLastP(getNotation(senseSeq));
+        }
+
+        String asNotation = null;
+        if (antiSenseSeq != null && antiSenseSeq.length() > 0) {
+            asNotation = removeLastP(getNotation(antiSenseSeq));
+        }
+
+        String basePair = hybridization(senseSeq, antiSenseSeq, rnaDesignType);
+
+        return getSirnaNotationFromStrands(ssNotation, asNotation, basePair);
+    }
+
+    /**
+     * This method assembles siRNA notation from strand notations and base pairs
+     * @param ssNotation sense strand simple notation without the last phosphate, null if there is no sense strand
+     * @param asNotation antisense strand simple notation without the last phosphate, null if there is no antisense strand
+     * @param basePair base pair string, could be empty
+     * @return HELM Notation for siRNA, empty string if there is no strand
+     */
+    static String getSirnaNotationFromStrands(String ssNotation, String asNotation, String basePair) {
         StringBuffer sb = new StringBuffer();
         String[] tokens = new String[]{"", ""};
         int count = 0;
 
-        if (senseSeq != null && senseSeq.length() > 0) {
+        if (ssNotation != null) {
             count++;
-            String ssNotation = getNotation(senseSeq);
-            ssNotation = removeLastP(ssNotation);
             tokens[0] = "RNA" + count + "{" + ssNotation + "}";
             tokens[1] = "RNA" + count + "{ss}";
         }
 
-        if (antiSenseSeq != null && antiSenseSeq.length() > 0) {
+        if (asNotation != null) {
             count++;
-            String asNotation = getNotation(antiSenseSeq);
-            asNotation = removeLastP(asNotation);
             if (tokens[0].length() > 0) {
                 tokens[0] = tokens[0] + "|";
             }
@@ -470,8 +473,6 @@ public class NucleotideSequenceParser {
             tokens[1] = tokens[1] + "RNA" + count + "{as}";
         }
 
-        String basePair = basePair = hybridization(senseSeq, antiSenseSeq, rnaDesignType);
-
         if (tokens[0].length() > 0) {
             sb.append(tokens[0]);
             sb.append("$$");
@@ -492,40 +493,74 @@ public class NucleotideSequenceParser {
                 antiSenseSeq != null && antiSenseSeq.length() > 0) {
             String analogSeqSS = getNaturalAnalogSequence(senseSeq).replaceAll("T", "U");
             String analogSeqAS = getNaturalAnalogSequence(antiSenseSeq).replaceAll("T", "U");
+            basePair = getSirnaBasePairString(analogSeqSS, analogSeqAS, rnaDesignType);
+        }
+        return basePair;
+    }
 
-            if (RNA_DESIGN_NONE.equalsIgnoreCase(rnaDesignType)) {
-                String normalCompAS = cleanup(getNormalComplementSequence(analogSeqAS));
-                String maxMatch = getMaxMatchFragment(analogSeqSS, normalCompAS);
-                if (maxMatch.length() > 0) {
-                    int ssStart = analogSeqSS.indexOf(maxMatch);
-                    int normalCompStart = normalCompAS.indexOf(maxMatch);
-                    int asStart = analogSeqAS.length() - maxMatch.length() - normalCompStart;
-
-                    for (int i = 0; i < maxMatch.length(); i++) {
-                        int ssPos = (i + ssStart) * 3 + 2;
-                        int asPos = (asStart + maxMatch.length() - 1 - i) * 3 + 2;
-                        if (basePair.length() > 0) {
-                            basePair = basePair + "|";
-                        }
-                        basePair = basePair + "RNA1,RNA2," + ssPos + ":pair-" + asPos + ":pair";
+    /**
+     * This method generates the siRNA base pair string from natural analog sequences
+     * @param analogSeqSS sense strand natural analog sequence, T replaced with U
+     * @param analogSeqAS antisense strand natural analog sequence, T replaced with U
+     * @param rnaDesignType
+     * @return base pair string
+     * @throws org.helm.notation.NotationException
+     */
+    static String getSirnaBasePairString(String analogSeqSS, String analogSeqAS, String rnaDesignType) throws NotationException {
+        String basePair = "";
+        if (RNA_DESIGN_NONE.equalsIgnoreCase(rnaDesignType)) {
+            String normalCompAS = getNormalComplementAnalogSequence(analogSeqAS);
+            String maxMatch = getMaxMatchFragment(analogSeqSS, normalCompAS);
+            if (maxMatch.length() > 0) {
+                int ssStart = analogSeqSS.indexOf(maxMatch);
+                int normalCompStart = normalCompAS.indexOf(maxMatch);
+                int asStart = analogSeqAS.length() - maxMatch.length() - normalCompStart;
+
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < maxMatch.length(); i++) {
+                    int ssPos = (i + ssStart) * 3 + 2;
+                    int asPos = (asStart + maxMatch.length() - 1 - i) * 3 + 2;
+                    if (sb.length() > 0) {
+                        sb.append("|");
                     }
+                    sb.append("RNA1,RNA2,");
+                    sb.append(ssPos);
+                    sb.append(":pair-");
+                    sb.append(asPos);
+                    sb.append(":pair");
                 }
-            } else if (RNA_DESIGN_TUSCHL_19_PLUS_2.equalsIgnoreCase(rnaDesignType)) {
-                int matchLength = 19;
-                basePair = hybridizationWithLengthFromStart(analogSeqSS, analogSeqAS, matchLength);
-            } else if (RNA_DESIGN_DICER_27_R.equalsIgnoreCase(rnaDesignType)) {
-                int matchLength = 25;
-                basePair = hybridizationWithLengthFromStart(analogSeqSS, analogSeqAS, matchLength);
-            } else if (RNA_DESIGN_DICER_27_L.equalsIgnoreCase(rnaDesignType)) {
-                int matchLength = 25;
-                basePair = hybridizationWithLengthFromStart(analogSeqSS, analogSeqAS, matchLength);
-            } else {
-                throw new NotationException("Unknow RNA Design");
+                basePair = sb.toString();
             }
+        } else if (RNA_DESIGN_TUSCHL_19_PLUS_2.equalsIgnoreCase(rnaDesignType)) {
+            int matchLength = 19;
+            basePair = hybridizationWithLengthFromStart(analogSeqSS, analogSeqAS, matchLength);
+        } else if (RNA_DESIGN_DICER_27_R.equalsIgnoreCase(rnaDesignType)) {
+            int matchLength = 25;
+            basePair = hybridizationWithLengthFromStart(analogSeqSS, analogSeqAS, matchLength);
+        } else if (RNA_DESIGN_DICER_27_L.equalsIgnoreCase(rnaDesignType)) {
+            int matchLength = 25;
+            basePair = hybridizationWithLengthFromStart(analogSeqSS, analogSeqAS, matchLength);
+        } else {
+            throw new NotationException("Unknow RNA Design");
         }
         return basePair;
     }
 
+    /**
+     * This method generates the complement of a natural analog sequence in normal (5-3) direction with the complement lookup table
+     * @param analogSeq natural analog sequence in normal direction
+     * @return complement natural analog sequence in normal direction
+     */
+    static String getNormalComplementAnalogSequence(String analogSeq) {
+        StringBuilder sb = new StringBuilder(analogSeq.length());
+        for (int i = analogSeq.length() - 1; i >= 0; i--) {
+            char c = analogSeq.charAt(i);
+            char comp = (c < COMPLEMENT_TABLE.length) ? COMPLEMENT_TABLE[c] : 0;
+            sb.append(comp == 0 ? 'X' : comp);
+        }
+        return sb.toString();
+    }
+
     private static String hybridizationWithLengthFromStart(String senseAnalogSeq, String antisenseAnalogSeq, int lengthFromStart) {
         String basePair = "";
         for (int i = 0; i < lengthFromStart; i++) {
@@ -556,25 +591,37 @@ public class NucleotideSequenceParser {
         List<Nucleotide> senseNucList = getNucleotideList(senseSeq);
         List<Nucleotide> antisenseNucList = getNucleotideList(antisenseSeq);
 
+        return validateSirnaDesign(senseNucList.size(), antisenseNucList.size(), rnaDesignType);
+    }
+
+    static boolean validateSirnaDesign(int senseCount, int antisenseCount, String rnaDesignType) throws NotationException {
+        if (RNA_DESIGN_NONE.equalsIgnoreCase(rnaDesignType)) {
+            return true;
+        }
+
+        if (!SUPPORTED_DESIGN_LIST.contains(rnaDesignType)) {
+            throw new NotationException("Unsupported RNA Design Type '" + rnaDesignType + "'");
+        }
+
         if (rnaDesignType.equals(RNA_DESIGN_TUSCHL_19_PLUS_2)) {
-            if (senseNucList.size() != 21) {
+            if (senseCount != 21) {
                 throw new NotationException("Sense strand for Tuschl 19+2 design must have 21 nucleotides");
             }
-            if (antisenseNucList.size() != 21) {
+            if (antisenseCount != 21) {
                 throw new NotationException("Antisense strand for Tuschl 19+2 design must have 21 nucleotides");
             }
         } else if (rnaDesignType.equals(RNA_DESIGN_DICER_27_R)) {
-            if (senseNucList.size() != 25) {
+            if (senseCount != 25) {
                 throw new NotationException("Sense strand for Dicer 27R design must have 25 nucleotides");
             }
-            if (antisenseNucList.size() != 27) {
+            if (antisenseCount != 27) {
                 throw new NotationException("Antisense strand for Dicer 27R design must have 27 nucleotides");
             }
         } else if (rnaDesignType.equals(RNA_DESIGN_DICER_27_L)) {
-            if (senseNucList.size() != 27) {
+            if (senseCount != 27) {
                 throw new NotationException("Sense strand for Dicer 27L design must have 27 nucleotides");
             }
-            if (antisenseNucList.size() != 25) {
+            if (antisenseCount != 25) {
                 throw new NotationException("Antisense strand for Dicer 27L design must have 25 nucleotides");
             }
         }
@@ -696,16 +743,107 @@ public class NucleotideSequenceParser {
             min = minLength;
         }
 
-        for (int len = shortSeq.length(); len > min; len--) {
-            for (int i = 0; i <= shortSeq.length() - len; i++) {
-                String tmp = shortSeq.substring(i, i + len);
+        //longest match, the first one in shortSeq wins ties
+        int[] match = getLongestCommonSubstring(shortSeq, longSeq);
+        if (match[1] > min) {
+            return shortSeq.substring(match[0], match[0] + match[1]);
+        }
 
-                if (longSeq.contains(tmp)) {
-                    return tmp;
+        return "";
+    }
+
+    /**
+     * This method finds the longest common substring with a suffix automaton of longSeq, in time linear to total sequence length
+     * @param shortSeq sequence scanned against the automaton
+     * @param longSeq sequence the automaton is built from
+     * @return {start, length} of the first longest common substring in shortSeq, length is 0 if there is none
+     */
+    private static int[] getLongestCommonSubstring(String shortSeq, String longSeq) {
+        Map<Character, Integer> alphabet = new HashMap<Character, Integer>();
+        for (int i = 0; i < longSeq.length(); i++) {
+            Character c = Character.valueOf(longSeq.charAt(i));
+            if (!alphabet.containsKey(c)) {
+                alphabet.put(c, alphabet.size());
+            }
+        }
+
+        int maxStates = 2 * longSeq.length() + 1;
+        int[][] next = new int[maxStates][];
+        int[] link = new int[maxStates];
+        int[] length = new int[maxStates];
+
+        next[0] = newTransitions(alphabet.size());
+        link[0] = -1;
+        int stateCount = 1;
+        int last = 0;
+        for (int i = 0; i < longSeq.length(); i++) {
+            int c = alphabet.get(Character.valueOf(longSeq.charAt(i))).intValue();
+            int cur = stateCount++;
+            next[cur] = newTransitions(alphabet.size());
+            length[cur] = length[last] + 1;
+
+            int p = last;
+            while (p != -1 && next[p][c] == -1) {
+                next[p][c] = cur;
+                p = link[p];
+            }
+            if (p == -1) {
+                link[cur] = 0;
+            } else {
+                int q = next[p][c];
+                if (length[p] + 1 == length[q]) {
+                    link[cur] = q;
+                } else {
+                    int clone = stateCount++;
+                    next[clone] = next[q].clone();
+                    length[clone] = length[p] + 1;
+                    link[clone] = link[q];
+                    while (p != -1 && next[p][c] == q) {
+                        next[p][c] = clone;
+                        p = link[p];
+                    }
+                    link[q] = clone;
+                    link[cur] = clone;
                 }
             }
+            last = cur;
+        }
+
+        //the first end position reaching the maximum gives the first start position
+        int state = 0;
+        int matchLength = 0;
+        int bestLength = 0;
+        int bestEnd = -1;
+        for (int j = 0; j < shortSeq.length(); j++) {
+            Integer index = alphabet.get(Character.valueOf(shortSeq.charAt(j)));
+            if (null == index) {
+                state = 0;
+                matchLength = 0;
+                continue;
+            }
+            int c = index.intValue();
+            while (state != 0 && next[state][c] == -1) {
+                state = link[state];
+                matchLength = length[state];
+            }
+            if (next[state][c] != -1) {
+                state = next[state][c];
+                matchLength++;
+            } else {
+                matchLength = 0;
+            }
+            if (matchLength > bestLength) {
+                bestLength = matchLength;
+                bestEnd = j;
+            }
         }
 
-        return "";
+        return new int[]{bestEnd - bestLength + 1, bestLength};
+    }
+
+    private static int[] newTransitions(int size) {
+        int[] transitions = new int[size];
+        Arrays.fill(transitions, -1);
+        return transitions;
     }
 }
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.tools;
+
+import org.helm.notation.NotationException;
+import org.helm.notation.model.Nucleotide;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class compiles the nucleotide symbols of one notation source into a trie for sequence tokenization.
+ * At each position the longest matching symbol wins, so the result does not depend on map iteration order,
+ * and work per sequence character is bounded by the longest symbol length.
+ */
+public class NucleotideSymbolTrie {
+
+    private Node root = new Node();
+
+    /**
+     * @param nucleotides nucleotide symbol to notation map of one notation source
+     */
+    public NucleotideSymbolTrie(Map<String, String> nucleotides) {
+        Set<String> symbols = nucleotides.keySet();
+        for (String symbol : symbols) {
+            if (null == symbol || symbol.length() == 0) {
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < symbol.length(); i++) {
+                Character c = Character.valueOf(symbol.charAt(i));
+                Node child = node.children.get(c);
+                if (null == child) {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.symbol = symbol;
+            node.notation = nucleotides.get(symbol);
+        }
+    }
+
+    /**
+     * This method finds the longest nucleotide symbol starting at the given position
+     * @param sequence nucleotide sequence
+     * @param pos start position
+     * @return matching Nucleotide, null if no symbol matches
+     */
+    public Nucleotide match(String sequence, int pos) {
+        Node node = root;
+        Node longest = null;
+        for (int i = pos; i < sequence.length(); i++) {
+            node = node.children.get(Character.valueOf(sequence.charAt(i)));
+            if (null == node) {
+                break;
+            }
+            if (null != node.symbol) {
+                longest = node;
+            }
+        }
+        if (null == longest) {
+            return null;
+        }
+        return new Nucleotide(longest.symbol, longest.notation);
+    }
+
+    /**
+     * This method converts non-direction nucleotide sequence into a List of nucleotide by longest match
+     * @param sequence nucleotide sequence
+     * @return list of nucleotides
+     * @throws org.helm.notation.NotationException
+     */
+    public List<Nucleotide> tokenize(String sequence) throws NotationException {
+        List<Nucleotide> l = new ArrayList<Nucleotide>();
+        int pos = 0;
+        while (pos < sequence.length()) {
+            Nucleotide nuc = match(sequence, pos);
+            if (null == nuc) {
+                throw new NotationException("Sequence contains unknown nucleotide starting at " + sequence.substring(pos));
+            }
+            l.add(nuc);
+            pos = pos + nuc.getSymbol().length();
+        }
+        return l;
+    }
+
+    private static class Node {
+
+        private Map<Character, Node> children = new HashMap<Character, Node>();
+        private String symbol;
+        private String notation;
+    }
+}
@@ -25,6 +25,7 @@ import chemaxon.marvin.plugin.PluginException;
 import chemaxon.struc.MolAtom;
 import chemaxon.struc.Molecule;
 
+import org.helm.notation.AdHocChemMonomerRegistry;
 import org.helm.notation.MonomerException;
 import org.helm.notation.MonomerFactory;
 import org.helm.notation.NotationConstant;
@@ -40,6 +41,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -149,6 +151,119 @@ public class SimpleNotationParser {
         return true;
     }
 
+    /**
+     * This method checks if simple polymer notation is valid, structure check is optional
+     * @param polymerNotation
+     * @param polymerType
+     * @param includeStructure true to build the polymer structure, false to check monomers and attachments only
+     * @return true or exception
+     * @throws java.io.IOException
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.MonomerException
+     * @throws org.helm.notation.StructureException
+     * @throws org.jdom.JDOMException
+     */
+    public static boolean validateSimpleNotation(String polymerNotation, String polymerType, boolean includeStructure) throws IOException, NotationException, MonomerException, StructureException, JDOMException {
+        if (includeStructure) {
+            return validateSimpleNotation(polymerNotation, polymerType);
+        }
+        getSimplePolymerAttachmentSet(polymerNotation, polymerType);
+        return true;
+    }
+
+    /**
+     * This method returns the connection points (monomerNumber:Rgroup) still available on the simple polymer.
+     * It walks the monomer attachment lists the same way getSimplePolymerStructure() merges monomers, but no molecule is built
+     * @param polymerNotation
+     * @param polymerType
+     * @return set of available connection points, such as 1:R1, or null if CHEM monomer has no specific structure
+     * @throws java.io.IOException
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.MonomerException
+     * @throws org.helm.notation.StructureException
+     * @throws org.jdom.JDOMException
+     */
+    public static Set<String> getSimplePolymerAttachmentSet(String polymerNotation, String polymerType) throws IOException, NotationException, MonomerException, StructureException, JDOMException {
+        List<Monomer> monomerList = getMonomerList(polymerNotation, polymerType);
+        if (monomerList == null || monomerList.size() == 0) {
+            throw new NotationException("Polymer notation contains no monomer");
+        }
+
+        Set<String> connections = new HashSet<String>();
+        if (polymerType.equals(Monomer.CHEMICAL_POLYMER_TYPE)) {
+            Monomer m = monomerList.get(0);
+            if (null == m.getCanSMILES()) {
+                return null;
+            }
+            for (String label : getAttachmentLabelSet(m)) {
+                connections.add("1:" + label);
+            }
+            return connections;
+        }
+
+        int prevMonomerIndex = -1;
+        Set<String> prevLabels = null;
+        for (int i = 0; i < monomerList.size(); i++) {
+            Monomer m = monomerList.get(i);
+            if (null == m.getCanSMILES()) {
+                throw new NotationException("Polymer notation contains non-specific monomer structure");
+            }
+            Set<String> labels = getAttachmentLabelSet(m);
+
+            if (null != prevLabels) {
+                if (m.getMonomerType().equals(Monomer.BACKBONE_MOMONER_TYPE)) {
+                    if (!prevLabels.remove(Attachment.BACKBONE_MONOMER_RIGHT_ATTACHEMENT) || !labels.remove(Attachment.BACKBONE_MONOMER_LEFT_ATTACHEMENT)) {
+                        throw new NotationException("Backbone monomer " + m.getAlternateId() + " cannot be connected at position " + (i + 1));
+                    }
+
+                    //possible unused R groups on previous backbone monomer
+                    for (String label : prevLabels) {
+                        connections.add("" + i + ":" + label);
+                    }
+                    prevMonomerIndex = i;
+                    prevLabels = labels;
+
+                } else if (m.getMonomerType().equals(Monomer.BRANCH_MOMONER_TYPE)) {
+                    if (!prevLabels.remove(Attachment.BACKBONE_MONOMER_BRANCH_ATTACHEMENT) || !labels.remove(Attachment.BRANCH_MONOMER_ATTACHEMENT)) {
+                        throw new NotationException("Branch monomer " + m.getAlternateId() + " cannot be connected at position " + (i + 1));
+                    }
+
+                    //possible unused R groups on branch monomer
+                    for (String label : labels) {
+                        connections.add("" + (i + 1) + ":" + label);
+                    }
+                } else {
+                    throw new NotationException("Undefined Monomer Type is not supported in simple polymer");
+                }
+            } else {
+                //first monomer
+                prevMonomerIndex = i;
+                prevLabels = labels;
+                if (prevLabels.remove(Attachment.BACKBONE_MONOMER_LEFT_ATTACHEMENT)) {
+                    connections.add("1:" + Attachment.BACKBONE_MONOMER_LEFT_ATTACHEMENT);
+                }
+            }
+        }
+
+        //check unused R group on the last backbone monomer
+        for (String label : prevLabels) {
+            connections.add("" + (prevMonomerIndex + 1) + ":" + label);
+        }
+
+        return connections;
+    }
+
+    private static Set<String> getAttachmentLabelSet(Monomer monomer) {
+        Set<String> labels = new HashSet<String>();
+        List<Attachment> al = monomer.getAttachmentList();
+        if (null != al) {
+            for (Attachment att : al) {
+                labels.add(att.getLabel());
+            }
+        }
+        return labels;
+    }
+
     /**
      * This method generates the RgroupStructure of simple polymer notation
      * @param polymerNotation
@@ -284,6 +399,13 @@ public class SimpleNotationParser {
 
         Map monomers = (Map) monomerDB.get(polymerType);
 
+        if (polymerType.equals(Monomer.CHEMICAL_POLYMER_TYPE) && !monomers.containsKey(monomerID)) {
+            Monomer adHocMonomer = factory.getAdHocChemMonomerRegistry().getMonomer(monomerID);
+            if (null != adHocMonomer) {
+                return adHocMonomer;
+            }
+        }
+
         if (!monomers.containsKey(monomerID)) {
             throw new NotationException("Unknow monomerID '" + monomerID + "' for " + polymerType);
         }
@@ -876,22 +998,32 @@ public class SimpleNotationParser {
             throw new NotationException("New monomer ID is required for monomer replacement");
         }
 
-        Map<String, Monomer> monomers = MonomerFactory.getInstance().getMonomerDB().get(polymerType);
+        MonomerFactory factory = MonomerFactory.getInstance();
+        Map<String, Monomer> monomers = factory.getMonomerDB().get(polymerType);
         if (null == monomers || monomers.size() == 0) {
             throw new NotationException("Unknown polymer type [" + polymerType + "] found");
         }
 
-        if (!monomers.containsKey(existingMonomerID)) {
+        //ad hoc CHEM monomers are kept in their own registry
+        Monomer existingMonomer = monomers.get(existingMonomerID);
+        Monomer newMonomer = monomers.get(newMonomerID);
+        if (polymerType.equals(Monomer.CHEMICAL_POLYMER_TYPE)) {
+            if (null == existingMonomer) {
+                existingMonomer = factory.getAdHocChemMonomerRegistry().getMonomer(existingMonomerID);
+            }
+            if (null == newMonomer) {
+                newMonomer = factory.getAdHocChemMonomerRegistry().getMonomer(newMonomerID);
+            }
+        }
+
+        if (null == existingMonomer) {
             throw new NotationException("Existing monomer ID [" + existingMonomerID + "] is invalid in polymer type " + polymerType);
         }
 
-        if (!monomers.containsKey(newMonomerID)) {
+        if (null == newMonomer) {
             throw new NotationException("New monomer ID [" + newMonomerID + "] is invalid in polymer type " + polymerType);
         }
 
-        Monomer existingMonomer = monomers.get(existingMonomerID);
-        Monomer newMonomer = monomers.get(newMonomerID);
-
         if (polymerType.equals(Monomer.NUCLIEC_ACID_POLYMER_TYPE)) {
             if (existingMonomer.getMonomerType().equals(newMonomer.getMonomerType())) {
                 if (existingMonomer.getMonomerType().equals(Monomer.BACKBONE_MOMONER_TYPE)) {
@@ -1185,7 +1317,7 @@ public class SimpleNotationParser {
 
     /**
      * This method preprocess the CHEMCHEM monomer node. Monomer could be predefined or added ad hoc
-     * which the system will generate an ID, and add to monomer factory
+     * which the system will generate an ID, and add to the ad hoc CHEM monomer registry of monomer factory
      * @param nodeDesc - in the format of ID or extended smiles
      * @return monomer alternateID
      * @throws MonomerException
@@ -1201,77 +1333,76 @@ public class SimpleNotationParser {
         }
 
         Map<String, Monomer> chemMonomers = factory.getMonomerDB().get(Monomer.CHEMICAL_POLYMER_TYPE);
-        Map<String, Monomer> smilesDB = factory.getSmilesMonomerDB();
-
-        String alternateId = null;
         if (chemMonomers.containsKey(nodeDesc)) {
-            alternateId = nodeDesc;
-        } else {
-            if (smilesDB.containsKey(nodeDesc)) {
-                Monomer tempM = smilesDB.get(nodeDesc);
-                if (tempM.getPolymerType().equals(Monomer.CHEMICAL_POLYMER_TYPE)) {
-                    alternateId = tempM.getAlternateId();
-                } else {
-                    throw new NotationException("Ad Hoc chemical monomer structure belongs to " + tempM.getPolymerType());
-                }
+            return nodeDesc;
+        }
+
+        Monomer tempM = factory.getSmilesMonomerDB().get(nodeDesc);
+        if (null != tempM) {
+            if (tempM.getPolymerType().equals(Monomer.CHEMICAL_POLYMER_TYPE)) {
+                return tempM.getAlternateId();
             } else {
+                throw new NotationException("Ad Hoc chemical monomer structure belongs to " + tempM.getPolymerType());
+            }
+        }
 
-                alternateId = generateNextChemMonomerID(chemMonomers);
-
-                Map<String, Attachment> ids = factory.getAttachmentDB();
-                Attachment R1HAtt = ids.get("R1-H");
-                Monomer m = new Monomer(Monomer.CHEMICAL_POLYMER_TYPE, Monomer.UNDEFINED_MOMONER_TYPE, null, alternateId);
-                m.setCanSMILES(nodeDesc);
-                List<Attachment> al = new ArrayList<Attachment>();
-                int start = 0;
-                int pos = nodeDesc.indexOf("R", start);
-                String number = "";
-                while (pos >= 0) {
-                    pos++;
-                    String letter = nodeDesc.substring(pos, pos + 1);
-                    while (letter.matches("\\d")) {
-                        number = number + letter;
-                        pos++;
-                        letter = nodeDesc.substring(pos, pos + 1);
-                    }
+        AdHocChemMonomerRegistry registry = factory.getAdHocChemMonomerRegistry();
+        Monomer m = registry.getMonomer(nodeDesc);
+        if (null == m) {
+            m = registry.getMonomerBySmiles(nodeDesc);
+        }
+        if (null != m) {
+            return m.getAlternateId();
+        }
 
-                    try {
-                        Attachment tmpAtt = DeepCopy.copy(R1HAtt);
-                        tmpAtt.setLabel("R"+number);
-                        tmpAtt.setAlternateId("R"+number+"-H");
-                        String oldSmi = tmpAtt.getCapGroupSMILES();
-                        String newSmi = oldSmi.replace("R1", "R"+number);
-                        tmpAtt.setCapGroupSMILES(newSmi);
-                        al.add(tmpAtt);
-                    } catch (Exception ex) {
-                        throw new NotationException("Unable to create attachment by copying from attachment database", ex);
-                    }
+        //other forms of the same structure share one ad hoc monomer
+        String uniqueSmiles = nodeDesc;
+        try {
+            uniqueSmiles = StructureParser.getUniqueExtendedSMILES(nodeDesc);
+        } catch (Exception ex) {
+            //invalid SMILES is reported when the structure is built
+        }
+        m = registry.getMonomerBySmiles(uniqueSmiles);
+        if (null != m) {
+            return m.getAlternateId();
+        }
 
-                    start = pos;
-                    pos = nodeDesc.indexOf("R", start);
-                    number = "";
-                }
+        Map<String, Attachment> ids = factory.getAttachmentDB();
+        Attachment R1HAtt = ids.get("R1-H");
+        m = new Monomer(Monomer.CHEMICAL_POLYMER_TYPE, Monomer.UNDEFINED_MOMONER_TYPE, null, null);
+        m.setCanSMILES(nodeDesc);
+        List<Attachment> al = new ArrayList<Attachment>();
+        int start = 0;
+        int pos = nodeDesc.indexOf("R", start);
+        String number = "";
+        while (pos >= 0) {
+            pos++;
+            String letter = nodeDesc.substring(pos, pos + 1);
+            while (letter.matches("\\d")) {
+                number = number + letter;
+                pos++;
+                letter = nodeDesc.substring(pos, pos + 1);
+            }
 
-                m.setAttachmentList(al);
-                try {
-                    factory.addNewMonomer(m);
-                } catch (Exception ex) {
-                    throw new NotationException("Unable to add adhoc new monomer into monomer databse", ex);
-                }
+            try {
+                Attachment tmpAtt = DeepCopy.copy(R1HAtt);
+                tmpAtt.setLabel("R"+number);
+                tmpAtt.setAlternateId("R"+number+"-H");
+                String oldSmi = tmpAtt.getCapGroupSMILES();
+                String newSmi = oldSmi.replace("R1", "R"+number);
+                tmpAtt.setCapGroupSMILES(newSmi);
+                al.add(tmpAtt);
+            } catch (Exception ex) {
+                throw new NotationException("Unable to create attachment by copying from attachment database", ex);
             }
+
+            start = pos;
+            pos = nodeDesc.indexOf("R", start);
+            number = "";
         }
-        return alternateId;
-    }
-    private static int seed = 0;
-    protected static String AD_HOC_CHEM_MONOMER_ID_PREFIX = "CM#";
-
-    private static String generateNextChemMonomerID(Map<String, Monomer> chemMonomers) {
-        seed++;
-        String result = AD_HOC_CHEM_MONOMER_ID_PREFIX + seed;
-        if (chemMonomers.containsKey(result)) {
-            return generateNextChemMonomerID(chemMonomers);
-        } else {
-            return result;
-        }
+        m.setAttachmentList(al);
+
+        return registry.register(m, uniqueSmiles).getAlternateId();
     }
+    protected static String AD_HOC_CHEM_MONOMER_ID_PREFIX = AdHocChemMonomerRegistry.ID_PREFIX;
 }
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright C 2012, The Pistoia Alliance
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ ******************************************************************************/
+package org.helm.notation.tools;
+
+import org.helm.notation.MonomerFactory;
+import org.helm.notation.MonomerException;
+import org.helm.notation.NotationConstant;
+import org.helm.notation.NotationContext;
+import org.helm.notation.NotationException;
+import org.helm.notation.NucleotideFactory;
+import org.helm.notation.model.Nucleotide;
+import org.helm.notation.model.SirnaDuplexResult;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.jdom.JDOMException;
+
+/**
+ * This class assembles siRNA duplexes in batch from columns of sense and antisense sequences.
+ * Each strand is tokenized once against the shared nucleotide symbol trie, natural analogs come from a table built once per batch,
+ * and complements use a lookup table, so notation, base pairs and formated duplex are produced in one pass without notation parsing.
+ * Duplexes are processed in parallel, results are in input order and an invalid duplex does not abort the batch.
+ */
+public class SirnaDuplexBuilder {
+
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    /**
+     * This method assembles all duplexes without RNA design, using one worker thread per processor
+     * @param senseSeqs sense strand sequences
+     * @param antiSenseSeqs antisense strand sequences, same size as senseSeqs
+     * @return list of SirnaDuplexResult in input order
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.MonomerException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    public static List<SirnaDuplexResult> build(List<String> senseSeqs, List<String> antiSenseSeqs) throws NotationException, MonomerException, IOException, JDOMException {
+        return build(senseSeqs, antiSenseSeqs, NucleotideSequenceParser.RNA_DESIGN_NONE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * This method assembles all duplexes with a pool of worker threads
+     * @param senseSeqs sense strand sequences
+     * @param antiSenseSeqs antisense strand sequences, same size as senseSeqs
+     * @param rnaDesignType one of NucleotideSequenceParser.SUPPORTED_DESIGN_LIST
+     * @param threadCount number of worker threads
+     * @return list of SirnaDuplexResult in input order
+     * @throws org.helm.notation.NotationException
+     * @throws org.helm.notation.MonomerException
+     * @throws java.io.IOException
+     * @throws org.jdom.JDOMException
+     */
+    public static List<SirnaDuplexResult> build(final List<String> senseSeqs, final List<String> antiSenseSeqs, final String rnaDesignType, int threadCount) throws NotationException, MonomerException, IOException, JDOMException {
+        if (senseSeqs.size() != antiSenseSeqs.size()) {
+            throw new NotationException("Sense and antisense sequence lists must have the same size");
+        }
+        if (threadCount < 1) {
+            threadCount = 1;
+        }
+
+        //shared tables are built once, before any worker runs
+        MonomerFactory.getInstance();
+        final NucleotideSymbolTrie trie = NucleotideFactory.getInstance().getNucleotideSymbolTrie(NotationConstant.NOTATION_SOURCE);
+        final Map<String, String> analogMap = getNaturalAnalogMap(NucleotideFactory.getInstance().getNucleotideTemplates().get(NotationConstant.NOTATION_SOURCE));
+
+        List<SirnaDuplexResult> results = new ArrayList<SirnaDuplexResult>(senseSeqs.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        //pooled threads do not inherit the library of the caller, a reload during the job does not reach it either
+        NotationContext context = NotationContext.snapshot();
+        try {
+            List<Future<List<SirnaDuplexResult>>> futures = new ArrayList<Future<List<SirnaDuplexResult>>>();
+            for (int start = 0; start < senseSeqs.size(); start = start + DEFAULT_CHUNK_SIZE) {
+                final int startIndex = start;
+                final int endIndex = Math.min(start + DEFAULT_CHUNK_SIZE, senseSeqs.size());
+                futures.add(executor.submit(NotationContext.withContext(context, new Callable<List<SirnaDuplexResult>>() {
+
+                    public List<SirnaDuplexResult> call() {
+                        List<SirnaDuplexResult> l = new ArrayList<SirnaDuplexResult>(endIndex - startIndex);
+                        for (int i = startIndex; i < endIndex; i++) {
+                            l.add(build(i, senseSeqs.get(i), antiSenseSeqs.get(i), rnaDesignType, trie, analogMap));
+                        }
+                        return l;
+                    }
+                })));
+            }
+
+            for (Future<List<SirnaDuplexResult>> future : futures) {
+                try {
+                    results.addAll(future.get());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new NotationException("Batch duplex assembly interrupted", ex);
+                } catch (ExecutionException ex) {
+                    throw new NotationException("Batch duplex assembly failed", ex.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private static SirnaDuplexResult build(int index, String senseSeq, String antiSenseSeq, String rnaDesignType, NucleotideSymbolTrie trie, Map<String, String> analogMap) {
+        SirnaDuplexResult result = new SirnaDuplexResult(index, senseSeq, antiSenseSeq);
+        try {
+            List<Nucleotide> ssList = getNormalList(senseSeq, trie);
+            List<Nucleotide> asList = getNormalList(antiSenseSeq, trie);
+            NucleotideSequenceParser.validateSirnaDesign(ssList.size(), asList.size(), rnaDesignType);
+
+            String ssNotation = null;
+            String ssAnalog = null;
+            if (!ssList.isEmpty()) {
+                ssNotation = NucleotideSequenceParser.removeLastP(getNotation(ssList));
+                ssAnalog = getNaturalAnalogSequence(ssList, analogMap);
+            }
+
+            String asNotation = null;
+            String asAnalog = null;
+            if (!asList.isEmpty()) {
+                asNotation = NucleotideSequenceParser.removeLastP(getNotation(asList));
+                asAnalog = getNaturalAnalogSequence(asList, analogMap);
+            }
+
+            String basePair = "";
+            String[] formated = null;
+            if (null != ssAnalog && null != asAnalog) {
+                basePair = NucleotideSequenceParser.getSirnaBasePairString(ssAnalog.replace('T', 'U'), asAnalog.replace('T', 'U'), rnaDesignType);
+                String reverseAsAnalog = new StringBuilder(asAnalog).reverse().toString();
+                formated = ComplexNotationParser.formatSirnaSequences(ssAnalog, asAnalog, reverseAsAnalog, "ss", "as", basePair, ComplexNotationParser.DEFAULT_PADDING_CHAR, ComplexNotationParser.DEFAULT_BASE_PAIR_CHAR);
+            } else if (null != ssAnalog) {
+                formated = new String[]{ssAnalog};
+            } else if (null != asAnalog) {
+                formated = new String[]{asAnalog};
+            } else {
+                formated = new String[0];
+            }
+
+            result.setNotation(NucleotideSequenceParser.getSirnaNotationFromStrands(ssNotation, asNotation, basePair));
+            result.setFormatedSequences(formated);
+        } catch (NotationException ex) {
+            result.setMessage(ex.getMessage());
+        } catch (Exception ex) {
+            result.setMessage(ex.toString());
+        }
+        return result;
+    }
+
+    private static List<Nucleotide> getNormalList(String sequence, NucleotideSymbolTrie trie) throws NotationException {
+        if (null == sequence || sequence.trim().length() == 0) {
+            return new ArrayList<Nucleotide>();
+        }
+        List<Nucleotide> l = trie.tokenize(NucleotideSequenceParser.cleanup(sequence));
+        if (!NucleotideSequenceParser.isNormalDirection(sequence)) {
+            List<Nucleotide> reverse = new ArrayList<Nucleotide>(l.size());
+            for (int i = l.size() - 1; i >= 0; i--) {
+                reverse.add(l.get(i));
+            }
+            return reverse;
+        }
+        return l;
+    }
+
+    private static String getNotation(List<Nucleotide> nucleotides) {
+        StringBuilder sb = new StringBuilder();
+        for (Nucleotide nucleotide : nucleotides) {
+            if (sb.length() > 0) {
+                sb.append(".");
+            }
+            sb.append(nucleotide.getNotation());
+        }
+        return sb.toString();
+    }
+
+    private static String getNaturalAnalogSequence(List<Nucleotide> nucleotides, Map<String, String> analogMap) {
+        StringBuilder sb = new StringBuilder();
+        for (Nucleotide nucleotide : nucleotides) {
+            String analog = analogMap.get(nucleotide.getNotation());
+            if (null == analog) {
+                analog = nucleotide.getNaturalAnalog();
+            }
+            sb.append(analog);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * nucleotide notation to natural analog, for every template of one notation source
+     */
+    private static Map<String, String> getNaturalAnalogMap(Map<String, String> nucleotides) {
+        Map<String, String> map = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : nucleotides.entrySet()) {
+            Nucleotide nucleotide = new Nucleotide(entry.getKey(), entry.getValue());
+            map.put(entry.getValue(), nucleotide.getNaturalAnalog());
+        }
+        return map;
+    }
+}